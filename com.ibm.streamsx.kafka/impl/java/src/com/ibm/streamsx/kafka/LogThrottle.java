@@ -0,0 +1,49 @@
+package com.ibm.streamsx.kafka;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of log messages of one kind, so that logging does not slow down the processing when
+ * the same condition occurs for many records. At most one message is logged per interval; the other messages are counted.
+ * The class can be used by multiple threads.
+ */
+public class LogThrottle {
+
+    private final long intervalNanos;
+    private final AtomicLong nextLogNanos;
+    private final AtomicLong nSuppressed = new AtomicLong(0);
+
+    /**
+     * Constructs a new LogThrottle. The first message is logged.
+     * @param interval the minimum time between two logged messages
+     * @param unit     the time unit of the interval
+     */
+    public LogThrottle(long interval, TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+        this.nextLogNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Tests whether a message can be logged now.
+     * @return the number of messages suppressed since the last logged message, or -1 if the message must be suppressed.
+     */
+    public long tryLog() {
+        final long now = System.nanoTime();
+        final long next = nextLogNanos.get();
+        if (now - next < 0 || !nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+            nSuppressed.incrementAndGet();
+            return -1;
+        }
+        return nSuppressed.getAndSet(0);
+    }
+
+    /**
+     * Creates the suffix for a logged message that tells how many messages have been suppressed.
+     * @param nSuppressed the number of suppressed messages as returned by {@link #tryLog()}
+     * @return the suffix, which is empty when no message has been suppressed
+     */
+    public static String suppressedSuffix(long nSuppressed) {
+        return nSuppressed > 0? " (" + nSuppressed + " similar messages suppressed)": ""; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
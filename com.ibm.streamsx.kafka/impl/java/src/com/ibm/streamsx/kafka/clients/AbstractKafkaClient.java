@@ -20,6 +20,8 @@ import com.ibm.streamsx.kafka.serialization.DoubleDeserializerExt;
 import com.ibm.streamsx.kafka.serialization.FloatDeserializerExt;
 import com.ibm.streamsx.kafka.serialization.IntegerDeserializerExt;
 import com.ibm.streamsx.kafka.serialization.LongDeserializerExt;
+import com.ibm.streamsx.kafka.serialization.RStringDeserializer;
+import com.ibm.streamsx.kafka.serialization.RStringSerializer;
 import com.ibm.streamsx.kafka.serialization.StringDeserializerExt;
 
 public abstract class AbstractKafkaClient {
@@ -27,7 +29,9 @@ public abstract class AbstractKafkaClient {
     private static final Logger logger = Logger.getLogger(AbstractKafkaClient.class);
 
     public <T> String getSerializer(Class<T> clazz) throws Exception {
-        if (clazz.equals(String.class) || clazz.equals(RString.class)) {
+        if (clazz.equals(RString.class)) {
+            return RStringSerializer.class.getCanonicalName();
+        } else if (clazz.equals(String.class)) {
             return StringSerializer.class.getCanonicalName();
         } else if (clazz.equals(Long.class)) {
             return LongSerializer.class.getCanonicalName();
@@ -45,7 +49,9 @@ public abstract class AbstractKafkaClient {
     }
 
     public String inferDeserializerFromSerializer(String serializerClassName) throws Exception {
-        if (serializerClassName.equals(StringSerializer.class.getCanonicalName())) {
+        if (serializerClassName.equals(RStringSerializer.class.getCanonicalName())) {
+            return RStringDeserializer.class.getCanonicalName();
+        } else if (serializerClassName.equals(StringSerializer.class.getCanonicalName())) {
             return StringDeserializerExt.class.getCanonicalName();
         } else if (serializerClassName.equals(LongSerializer.class.getCanonicalName())) {
             return LongDeserializerExt.class.getCanonicalName();
@@ -63,7 +69,9 @@ public abstract class AbstractKafkaClient {
     }
 
     public <T> String getDeserializer(Class<T> clazz) throws Exception {
-        if (clazz.equals(String.class) || clazz.equals(RString.class)) {
+        if (clazz.equals(RString.class)) {
+            return RStringDeserializer.class.getCanonicalName();
+        } else if (clazz.equals(String.class)) {
             return StringDeserializerExt.class.getCanonicalName();
         } else if (clazz.equals(Long.class)) {
             return LongDeserializerExt.class.getCanonicalName();
@@ -0,0 +1,114 @@
+package com.ibm.streamsx.kafka.clients;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writer and reader for the compact binary representation of offsets.
+ * Integers are encoded as unsigned LEB128 variable length integers, so that small numbers like
+ * partition numbers occupy one byte. Strings are encoded as variable length byte count followed by the UTF-8 bytes.
+ */
+final class CompactEncoding {
+
+    private CompactEncoding() {
+    }
+
+    /**
+     * Writes into a growing byte array.
+     */
+    static final class Writer {
+        private byte[] buf;
+        private int pos = 0;
+
+        Writer(int initialCapacity) {
+            buf = new byte[Math.max(16, initialCapacity)];
+        }
+
+        private void ensureCapacity(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buf[pos++] = (byte) b;
+        }
+
+        /**
+         * Writes a non-negative long value.
+         * @param value the value; must not be negative
+         */
+        void writeVarLong(long value) {
+            if (value < 0) throw new IllegalArgumentException("negative value: " + value); //$NON-NLS-1$
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value);
+        }
+
+        void writeString(String s) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * Reads from a byte array.
+     */
+    static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+            this.pos = 0;
+        }
+
+        private void checkAvailable(int n) {
+            if (pos + n > buf.length) throw new IllegalArgumentException("truncated data at position " + pos); //$NON-NLS-1$
+        }
+
+        int readByte() {
+            checkAvailable(1);
+            return buf[pos++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("malformed variable length integer at position " + pos); //$NON-NLS-1$
+        }
+
+        int readVarInt() {
+            final long value = readVarLong();
+            if (value > Integer.MAX_VALUE) throw new IllegalArgumentException("integer value out of range: " + value); //$NON-NLS-1$
+            return (int) value;
+        }
+
+        String readString() {
+            final int len = readVarInt();
+            checkAvailable(len);
+            final String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
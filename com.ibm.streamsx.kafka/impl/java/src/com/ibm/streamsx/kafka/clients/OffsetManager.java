@@ -3,27 +3,41 @@ package com.ibm.streamsx.kafka.clients;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.log4j.Logger;
 /**
  * This class manages the offsets for partitions per topic.
+ * <p>
+ * The offsets are modified by the thread that submits the tuples and by the event thread of the consumer client,
+ * and they are serialized by the thread that creates the checkpoint. Saving a single offset with {@link #savePosition(String, int, long)}
+ * or {@link #setOffset(String, int, long)} does not lock, so that the submission of tuples is not slowed down; the
+ * {@link TopicManager} makes these stores safe for concurrent writers. The methods that add topics or save several offsets,
+ * and the methods that serialize the state, are synchronized on the OffsetManager, so that a checkpoint sees either all
+ * or none of the modifications of such a method. Callers that must make several modifications appear atomically to the
+ * checkpoint synchronize on the OffsetManager.
  */
 public class OffsetManager implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger logger = Logger.getLogger(OffsetManager.class);
+    /** version of the compact binary format written by {@link #toByteArray()} */
+    private static final int FORMAT_VERSION = 1;
+    /** version of the compact binary format written by {@link #toDeltaByteArray(OffsetManager)} */
+    private static final int DELTA_FORMAT_VERSION = 2;
 
     private Map<String /* topic */, TopicManager> managerMap;
     private transient KafkaConsumer<?, ?> offsetConsumer;
 
     public <K, V> OffsetManager(KafkaConsumer<K, V> offsetConsumer) {
-        this.managerMap = Collections.synchronizedMap(new HashMap<String, TopicManager>());
+        // lookups without the OffsetManager lock for savePosition, which is called for every submitted tuple
+        this.managerMap = new ConcurrentHashMap<String, TopicManager>();
         this.offsetConsumer = offsetConsumer;
     }
 
@@ -34,6 +48,10 @@ public class OffsetManager implements Serializable {
      * @throws ObjectStreamException
      */
     private Object readResolve() throws ObjectStreamException {
+        if (!(managerMap instanceof ConcurrentHashMap)) {
+            // checkpoints of previous versions contain a synchronized HashMap
+            managerMap = new ConcurrentHashMap<String, TopicManager>(managerMap);
+        }
         managerMap.values().forEach(mgr -> mgr.setOffsetConsumer(offsetConsumer));
 
         return this;
@@ -65,11 +83,11 @@ public class OffsetManager implements Serializable {
      * @param topicPartitions the partitions to be included into the secondary mapping.
      *        It is assumed that the partitions in the list belong only to the given topic.
      */
-    public void addTopic(String topic, List<TopicPartition> topicPartitions) {
+    public synchronized void addTopic(String topic, List<TopicPartition> topicPartitions) {
         TopicManager tm = new TopicManager(topic, topicPartitions, offsetConsumer);
         TopicManager previousValue = managerMap.putIfAbsent(topic, tm);
         if (previousValue == null /* new topic added */) {
-            logger.debug("Added topic: " + topic); //$NON-NLS-1$
+            if (logger.isDebugEnabled()) logger.debug("Added topic: " + topic); //$NON-NLS-1$
         }
     }
 
@@ -79,7 +97,7 @@ public class OffsetManager implements Serializable {
      * @throws org.apache.kafka.clients.consumer.InvalidOffsetException - if no offset is currently defined for a partition.
      *         TODO: in this case -1 should be set or no secondary mapping be created. -- must check this with {@link KafkaConsumerClient#refreshFromCluster()}
      */
-    public void savePositionFromCluster() {
+    public synchronized void savePositionFromCluster() {
         for (Entry<String, TopicManager> entry : managerMap.entrySet()) {
             entry.getValue().savePositionFromCluster();
         }
@@ -141,6 +159,97 @@ public class OffsetManager implements Serializable {
         return offset;
     }
 
+    /**
+     * Returns all mapped offsets.
+     * @return a new map from topic partition to offset
+     */
+    public synchronized Map<TopicPartition, Long> getOffsetMap() {
+        final Map<TopicPartition, Long> offsetMap = new HashMap<>();
+        managerMap.forEach((topic, tm) -> tm.getOffsetMap().forEach((partition, offset) -> offsetMap.put(new TopicPartition(topic, partition), offset)));
+        return offsetMap;
+    }
+
+    /**
+     * Returns the state in a versioned compact binary format, which is much smaller than the Java serialized form.
+     * The format is a version byte, followed by the number of topics and the state of every topic.
+     * The offset consumer is not part of the state.
+     * @return the encoded state
+     * @see #fromByteArray(byte[])
+     */
+    public synchronized byte[] toByteArray() {
+        final List<TopicManager> managers = new ArrayList<>(managerMap.values());
+        final CompactEncoding.Writer writer = new CompactEncoding.Writer(64 * managers.size() + 8);
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeVarInt(managers.size());
+        managers.forEach(tm -> tm.encode(writer));
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates an OffsetManager from data created by {@link #toByteArray()} or by Java serialization of previous toolkit versions.
+     * After creation {@link #setOffsetConsumer(KafkaConsumer)} must be called.
+     * @param data the encoded state
+     * @return a new OffsetManager
+     * @throws IllegalArgumentException the data are malformed or have an unsupported format version.
+     */
+    public static OffsetManager fromByteArray(byte[] data) {
+        if (data.length >= 2 && data[0] == (byte)0xAC && data[1] == (byte)0xED) {
+            // Java serialization stream magic
+            return SerializationUtils.deserialize(data);
+        }
+        final CompactEncoding.Reader reader = new CompactEncoding.Reader(data);
+        final int version = reader.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("unsupported offset manager format version: " + version); //$NON-NLS-1$
+        }
+        final OffsetManager offsetManager = new OffsetManager(null);
+        final int nTopics = reader.readVarInt();
+        for (int i = 0; i < nTopics; ++i) {
+            final TopicManager tm = TopicManager.decode(reader);
+            offsetManager.managerMap.put(tm.getTopic(), tm);
+        }
+        return offsetManager;
+    }
+
+    /**
+     * Returns the changes relative to a base state in a compact binary format. The size of the data is
+     * proportional to the number of partitions whose offsets differ from the base.
+     * @param base the base state
+     * @return the encoded changes
+     * @see #fromDeltaByteArray(OffsetManager, byte[])
+     */
+    public synchronized byte[] toDeltaByteArray(OffsetManager base) {
+        final List<TopicManager> managers = new ArrayList<>(managerMap.values());
+        final CompactEncoding.Writer writer = new CompactEncoding.Writer(32 * managers.size() + 8);
+        writer.writeByte(DELTA_FORMAT_VERSION);
+        writer.writeVarInt(managers.size());
+        managers.forEach(tm -> tm.encodeDelta(writer, base.managerMap.get(tm.getTopic())));
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates an OffsetManager from a base state and the changes created by {@link #toDeltaByteArray(OffsetManager)}.
+     * The base state is not modified. After creation {@link #setOffsetConsumer(KafkaConsumer)} must be called.
+     * @param base the base state
+     * @param data the encoded changes
+     * @return a new OffsetManager
+     * @throws IllegalArgumentException the data are malformed, have an unsupported format version, or do not match the base.
+     */
+    public static OffsetManager fromDeltaByteArray(OffsetManager base, byte[] data) {
+        final CompactEncoding.Reader reader = new CompactEncoding.Reader(data);
+        final int version = reader.readByte();
+        if (version != DELTA_FORMAT_VERSION) {
+            throw new IllegalArgumentException("unsupported offset manager delta format version: " + version); //$NON-NLS-1$
+        }
+        final OffsetManager offsetManager = new OffsetManager(null);
+        final int nTopics = reader.readVarInt();
+        for (int i = 0; i < nTopics; ++i) {
+            final TopicManager tm = TopicManager.decodeDelta(reader, base.managerMap);
+            offsetManager.managerMap.put(tm.getTopic(), tm);
+        }
+        return offsetManager;
+    }
+
     @Override
     public String toString() {
         return "OffsetManager [managerMap=" + managerMap + "]"; //$NON-NLS-1$ //$NON-NLS-2$
@@ -1,9 +1,16 @@
 package com.ibm.streamsx.kafka.clients;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.TopicPartition;
@@ -12,14 +19,36 @@ import org.apache.log4j.Logger;
 /**
  * Retrieves and stores the latest offsets for
  * each partition of a single topic.
+ * 
+ * The offsets are stored in a dense array indexed by the partition number, so that
+ * {@link #setOffset(int, long)} neither allocates nor locks when the partition is known. The serialized form
+ * is the partition-to-offset map of previous versions, so that existing checkpoints can be restored.
+ * <p>
+ * This class is thread-safe. The offsets are written by the thread that submits the tuples and by the
+ * event thread of the consumer client, which saves the positions of newly assigned partitions, and they are read
+ * by the checkpoint thread. A write within the array is a volatile store without lock. Only growing the array
+ * takes the lock of the TopicManager. The grown array is published before the offsets are copied into it,
+ * and the copy does not overwrite offsets that have been stored into the grown array in the meantime. A writer that finds
+ * the array replaced after its store repeats the store in the new array, so that no write is lost. Readers that need
+ * all offsets take the lock, so that they do not see an array whose copy is in progress.
  */
 public class TopicManager implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger logger = Logger.getLogger(TopicManager.class);
 
+    /** value in {@link #offsets} for partitions without mapping */
+    private static final long NO_OFFSET = -1l;
+    /** the serialized fields; `offsetMap` is the offsets array in the compatible representation */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("topic", String.class), //$NON-NLS-1$
+            new ObjectStreamField("offsetMap", Map.class), //$NON-NLS-1$
+            new ObjectStreamField("topicPartitions", List.class) //$NON-NLS-1$
+    };
+
     private String topic;
     private transient KafkaConsumer<?, ?> offsetConsumer;
-    private Map<Integer /* partition */, Long /* offset */> offsetMap;
+    /** offset per partition number, {@link #NO_OFFSET} if there is no mapping; replaced under the lock, when it must grow */
+    private transient volatile AtomicLongArray offsets;
 	private List<TopicPartition> topicPartitions;
 
 	/**
@@ -32,7 +61,26 @@ public class TopicManager implements Serializable {
         this.topic = topic;
         this.topicPartitions = topicPartitions;
         this.offsetConsumer = offsetConsumer;
-        this.offsetMap = new HashMap<Integer, Long>();
+        int maxPartition = -1;
+        for (TopicPartition tp: topicPartitions) {
+            maxPartition = Math.max(maxPartition, tp.partition());
+        }
+        this.offsets = new AtomicLongArray(newOffsets(maxPartition + 1));
+    }
+
+    /**
+     * Constructs a TopicManager from decoded state.
+     */
+    private TopicManager(String topic, List<TopicPartition> topicPartitions, long[] offsets) {
+        this.topic = topic;
+        this.topicPartitions = topicPartitions;
+        this.offsets = new AtomicLongArray(offsets);
+    }
+
+    private static long[] newOffsets(int length) {
+        long[] a = new long[length];
+        Arrays.fill(a, NO_OFFSET);
+        return a;
     }
 
     /**
@@ -43,13 +91,21 @@ public class TopicManager implements Serializable {
         this.offsetConsumer = offsetConsumer;
     }
 
+    /**
+     * Returns the topic.
+     * @return the topic
+     */
+    public String getTopic() {
+        return topic;
+    }
+
     /**
      * returns the offset of a given partition number.
      * @param partition the partition number
      * @return the stored offset for the partition or `null` if there is no mapping for the given partition number.  
      */
-    public Long getOffset(int partition) {
-        return offsetMap.get(partition);
+    public synchronized Long getOffset(int partition) {
+        return containsPartition(partition)? offsets.get(partition): null;
     }
 
     /**
@@ -57,8 +113,8 @@ public class TopicManager implements Serializable {
      * @param partition the partition number
      * @return `true` if the partition number is mapped to an offset, `false` otherwise.
      */
-    public boolean containsPartition(int partition) {
-    	return offsetMap.containsKey(partition);
+    public synchronized boolean containsPartition(int partition) {
+    	return partition >= 0 && partition < offsets.length() && offsets.get(partition) != NO_OFFSET;
     }
     
     /**
@@ -73,7 +129,7 @@ public class TopicManager implements Serializable {
             // TODO: throws org.apache.kafka.clients.consumer.InvalidOffsetException - f no offset is currently defined for the partition
             // set offset to -1 or simply do not create a mapping partition -> offset?
             long offset = offsetConsumer.position(tp);
-            logger.debug("Saving offset for last record retrieved from cluster..."); //$NON-NLS-1$
+            if (logger.isDebugEnabled()) logger.debug("Saving offset for last record retrieved from cluster..."); //$NON-NLS-1$
             setOffset(part.partition(), offset);
         });
     }
@@ -82,16 +138,215 @@ public class TopicManager implements Serializable {
      * Create a mapping from partition number to offset.
      * The mapping is also created if the partition number is not contained in the `topicPartitions`
      * argument of the constructor {@link #TopicManager(String, List, KafkaConsumer)}.
+     * The store does not lock unless the offsets array must grow.
      * @param partition the partition number
      * @param offset the offset
      */
     public void setOffset(int partition, long offset) {
-        offsetMap.put(partition, offset);
-        logger.debug("Updated offset: topic=" + topic + ", partition=" + partition + ", newOffset=" + offset); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        AtomicLongArray a = offsets;
+        while (true) {
+            if (partition >= a.length()) {
+                a = grow(partition);
+            }
+            a.set(partition, offset);
+            final AtomicLongArray current = offsets;
+            if (current == a) break;
+            // grown concurrently; the store may not have been copied
+            a = current;
+        }
+        if (logger.isDebugEnabled()) logger.debug("Updated offset: topic=" + topic + ", partition=" + partition + ", newOffset=" + offset); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Grows the offsets array, so that it contains the given partition.
+     * @param partition the partition number
+     * @return the current offsets array
+     */
+    private synchronized AtomicLongArray grow(int partition) {
+        final AtomicLongArray a = offsets;
+        if (partition < a.length()) return a;
+        final AtomicLongArray grown = new AtomicLongArray(newOffsets(Math.max(partition + 1, a.length() * 2)));
+        // publish first, so that concurrent writers repeat their stores in the grown array; do not overwrite these stores
+        offsets = grown;
+        for (int i = 0; i < a.length(); ++i) {
+            final long value = a.get(i);
+            if (value != NO_OFFSET) grown.compareAndSet(i, NO_OFFSET, value);
+        }
+        return grown;
+    }
+
+    /**
+     * Returns a copy of the offsets array.
+     * @return a new array
+     */
+    private synchronized long[] copyOffsets() {
+        final AtomicLongArray a = offsets;
+        final long[] copy = new long[a.length()];
+        for (int i = 0; i < copy.length; ++i) {
+            copy[i] = a.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Creates the partition-to-offset map from the offsets array.
+     * @return a new map
+     */
+    Map<Integer /* partition */, Long /* offset */> getOffsetMap() {
+        final long[] a = copyOffsets();
+        final Map<Integer, Long> offsetMap = new HashMap<Integer, Long>();
+        for (int partition = 0; partition < a.length; ++partition) {
+            if (a[partition] != NO_OFFSET) offsetMap.put(partition, a[partition]);
+        }
+        return offsetMap;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("topic", topic); //$NON-NLS-1$
+        fields.put("offsetMap", getOffsetMap()); //$NON-NLS-1$
+        fields.put("topicPartitions", topicPartitions); //$NON-NLS-1$
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        topic = (String) fields.get("topic", null); //$NON-NLS-1$
+        topicPartitions = (List<TopicPartition>) fields.get("topicPartitions", null); //$NON-NLS-1$
+        final Map<Integer, Long> offsetMap = (Map<Integer, Long>) fields.get("offsetMap", null); //$NON-NLS-1$
+        int length = 0;
+        if (offsetMap != null) {
+            for (Integer partition: offsetMap.keySet()) length = Math.max(length, partition + 1);
+        }
+        final long[] a = newOffsets(length);
+        if (offsetMap != null) {
+            offsetMap.forEach((partition, offset) -> a[partition] = offset);
+        }
+        offsets = new AtomicLongArray(a);
+    }
+
+    /**
+     * Writes the state in the compact binary representation:
+     * topic, number of topic partitions, partition numbers, number of mapped partitions,
+     * and for every mapped partition the distance to the previous mapped partition and the offset.
+     * @param writer the writer
+     */
+    void encode(CompactEncoding.Writer writer) {
+        writer.writeString(topic);
+        writePartitions(writer);
+        writeOffsets(writer, null);
+    }
+
+    /**
+     * Writes the changes relative to a base state: topic, a flag whether the topic partitions follow,
+     * the topic partitions when they differ from the base, and the mapped partitions whose offsets differ from the base.
+     * @param writer the writer
+     * @param base   the TopicManager of the same topic within the base, or `null` if the base does not contain the topic
+     */
+    void encodeDelta(CompactEncoding.Writer writer, TopicManager base) {
+        writer.writeString(topic);
+        if (base == null || !topicPartitions.equals(base.topicPartitions)) {
+            writer.writeByte(1);
+            writePartitions(writer);
+        }
+        else {
+            writer.writeByte(0);
+        }
+        writeOffsets(writer, base == null? null: base.copyOffsets());
+    }
+
+    private void writePartitions(CompactEncoding.Writer writer) {
+        writer.writeVarInt(topicPartitions.size());
+        topicPartitions.forEach(tp -> writer.writeVarInt(tp.partition()));
+    }
+
+    /**
+     * writes the mapped offsets that differ from the base offsets
+     * @param writer      the writer
+     * @param baseOffsets the base offsets or `null` to write all mapped offsets
+     */
+    private void writeOffsets(CompactEncoding.Writer writer, long[] baseOffsets) {
+        final long[] a = copyOffsets();
+        final long[] b = baseOffsets == null? new long[0]: baseOffsets;
+        int nMapped = 0;
+        for (int partition = 0; partition < a.length; ++partition) {
+            if (a[partition] != NO_OFFSET && (partition >= b.length || b[partition] != a[partition])) ++nMapped;
+        }
+        writer.writeVarInt(nMapped);
+        int next = 0;
+        for (int partition = 0; partition < a.length; ++partition) {
+            if (a[partition] != NO_OFFSET && (partition >= b.length || b[partition] != a[partition])) {
+                writer.writeVarInt(partition - next);
+                writer.writeVarLong(a[partition]);
+                next = partition + 1;
+            }
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #encode(CompactEncoding.Writer)}.
+     * @param reader the reader
+     * @return a new TopicManager without offset consumer
+     */
+    static TopicManager decode(CompactEncoding.Reader reader) {
+        final String topic = reader.readString();
+        final List<TopicPartition> topicPartitions = readPartitions(reader, topic);
+        return new TopicManager(topic, topicPartitions, readOffsets(reader, newOffsets(0)));
+    }
+
+    /**
+     * Reads the changes written by {@link #encodeDelta(CompactEncoding.Writer, TopicManager)} and applies them to a copy of the base.
+     * @param reader the reader
+     * @param baseTopicManagers the TopicManagers of the base state by topic
+     * @return a new TopicManager without offset consumer
+     */
+    static TopicManager decodeDelta(CompactEncoding.Reader reader, Map<String, TopicManager> baseTopicManagers) {
+        final String topic = reader.readString();
+        final boolean hasPartitions = reader.readByte() != 0;
+        final TopicManager base = baseTopicManagers.get(topic);
+        if (!hasPartitions && base == null) {
+            throw new IllegalArgumentException("topic not contained in base state: " + topic); //$NON-NLS-1$
+        }
+        final List<TopicPartition> topicPartitions = hasPartitions? readPartitions(reader, topic): new ArrayList<>(base.topicPartitions);
+        final long[] baseOffsets = base == null? newOffsets(0): base.copyOffsets();
+        return new TopicManager(topic, topicPartitions, readOffsets(reader, baseOffsets));
+    }
+
+    private static List<TopicPartition> readPartitions(CompactEncoding.Reader reader, String topic) {
+        final int nTopicPartitions = reader.readVarInt();
+        final List<TopicPartition> topicPartitions = new ArrayList<>(nTopicPartitions);
+        for (int i = 0; i < nTopicPartitions; ++i) {
+            topicPartitions.add(new TopicPartition(topic, reader.readVarInt()));
+        }
+        return topicPartitions;
+    }
+
+    /**
+     * reads mapped offsets and sets them into the given array, which is grown when required
+     * @param reader the reader
+     * @param a      the offsets array
+     * @return the offsets array
+     */
+    private static long[] readOffsets(CompactEncoding.Reader reader, long[] a) {
+        final int nMapped = reader.readVarInt();
+        int next = 0;
+        for (int i = 0; i < nMapped; ++i) {
+            final int partition = next + reader.readVarInt();
+            final long offset = reader.readVarLong();
+            if (partition >= a.length) {
+                final int oldLength = a.length;
+                a = Arrays.copyOf(a, partition + 1);
+                Arrays.fill(a, oldLength, a.length, NO_OFFSET);
+            }
+            a[partition] = offset;
+            next = partition + 1;
+        }
+        return a;
     }
 
     @Override
     public String toString() {
-        return "TopicManager [topic=" + topic + ", offsetMap=" + offsetMap + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        return "TopicManager [topic=" + topic + ", offsetMap=" + getOffsetMap() + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
     }
 }
@@ -0,0 +1,195 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.log4j.Logger;
+
+/**
+ * Tracks the offsets of the records that have been submitted as tuples and commits them to Kafka.
+ *
+ * The thread that submits the tuples reports every submitted record via {@link #recordSubmitted(String, int, long)}.
+ * The event thread, which owns the Kafka consumer, tests with {@link #isCommitDue()} whether a commit is due
+ * and commits asynchronously with {@link #commitAsync(Consumer)}. A commit is due when the configured
+ * number of records has been submitted since last commit, or when the commit period has elapsed.
+ * On shutdown and partition revocation, the event thread commits synchronously with {@link #commitSync(Consumer)}.
+ *
+ * As only offsets of submitted records are committed, records that are queued but not yet submitted
+ * are consumed again after a restart (at-least-once).
+ */
+public class CommitManager {
+
+    private static final Logger logger = Logger.getLogger(CommitManager.class);
+
+    private final long commitCount;
+    private final long commitPeriodMillis;
+
+    /**
+     * the offset of the next record to consume per assigned partition, i.e. offset of the last submitted record + 1.
+     * The map is replaced when the assignment changes, but never modified.
+     */
+    private volatile Map<TopicPartition, AtomicLong> submittedOffsets = Collections.emptyMap();
+    /** the number of submitted records; written only by the submitting thread */
+    private final AtomicLong nSubmitted = new AtomicLong(0);
+
+    // accessed only by the event thread
+    private final Map<TopicPartition, Long> committedOffsets = new HashMap<>();
+    private long nSubmittedAtLastCommit = 0;
+    private long lastCommitTime = System.currentTimeMillis();
+
+    // accessed only by the submitting thread; caches the lookup for consecutive records of the same partition
+    private Map<TopicPartition, AtomicLong> cachedOffsets = null;
+    private String cachedTopic = null;
+    private int cachedPartition = -1;
+    private AtomicLong cachedOffset = null;
+
+    private final OffsetCommitCallback commitCallback = (offsets, exception) -> {
+        if (exception != null) {
+            logger.warn("Failed to commit offsets " + offsets + ": " + exception.getLocalizedMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        else if (logger.isDebugEnabled()) {
+            logger.debug("committed offsets: " + offsets); //$NON-NLS-1$
+        }
+    };
+
+    /**
+     * Constructs a new CommitManager.
+     * @param commitCount        the number of submitted records after which a commit is due. Values &lt;= 0 disable the count trigger.
+     * @param commitPeriodMillis the time in milliseconds after which a commit is due when records have been submitted.
+     */
+    public CommitManager(long commitCount, long commitPeriodMillis) {
+        this.commitCount = commitCount;
+        this.commitPeriodMillis = commitPeriodMillis;
+    }
+
+    /**
+     * Sets the partitions for which offsets are tracked. Submitted records of other partitions are ignored.
+     * Tracked offsets of partitions, which are contained in the new assignment, are retained.
+     * Must be called by the event thread.
+     * @param partitions the assigned partitions
+     */
+    public void setAssignment(Collection<TopicPartition> partitions) {
+        final Map<TopicPartition, AtomicLong> current = submittedOffsets;
+        final Map<TopicPartition, AtomicLong> newOffsets = new HashMap<>(partitions.size() * 2);
+        for (TopicPartition tp: partitions) {
+            AtomicLong offset = current.get(tp);
+            newOffsets.put(tp, offset == null? new AtomicLong(-1l): offset);
+        }
+        committedOffsets.keySet().retainAll(newOffsets.keySet());
+        submittedOffsets = newOffsets;
+    }
+
+    /**
+     * Replaces the tracked offsets by the given offsets, for example after the consumer has been moved to the offsets
+     * restored from a checkpoint. Offsets of submitted records that have been tracked before are discarded, and the given
+     * offsets are treated as not committed, so that the next commit moves the committed offsets back to them.
+     * Must be called by the event thread while the submitting thread does not submit records.
+     * @param partitions the assigned partitions
+     * @param offsets    the offsets of the next records to consume; partitions without offset are tracked from the next submitted record
+     */
+    public void resetOffsets(Collection<TopicPartition> partitions, Map<TopicPartition, Long> offsets) {
+        final Map<TopicPartition, AtomicLong> newOffsets = new HashMap<>(partitions.size() * 2);
+        for (TopicPartition tp: partitions) {
+            final Long offset = offsets.get(tp);
+            newOffsets.put(tp, new AtomicLong(offset == null? -1l: offset.longValue()));
+        }
+        committedOffsets.clear();
+        submittedOffsets = newOffsets;
+    }
+
+    /**
+     * Returns the offsets of the next records to consume for the partitions, for which records have been submitted.
+     * @return a new map from topic partition to offset
+     */
+    public Map<TopicPartition, Long> getSubmittedOffsets() {
+        final Map<TopicPartition, Long> offsets = new HashMap<>();
+        submittedOffsets.forEach((tp, submittedOffset) -> {
+            final long offset = submittedOffset.get();
+            if (offset >= 0) offsets.put(tp, offset);
+        });
+        return offsets;
+    }
+
+    /**
+     * Reports that a record has been submitted. Must be called by the submitting thread.
+     * @param topic     the topic of the record
+     * @param partition the partition of the record
+     * @param offset    the offset of the record
+     */
+    public void recordSubmitted(String topic, int partition, long offset) {
+        final Map<TopicPartition, AtomicLong> offsets = submittedOffsets;
+        if (offsets != cachedOffsets || partition != cachedPartition || !topic.equals(cachedTopic)) {
+            cachedOffsets = offsets;
+            cachedTopic = topic;
+            cachedPartition = partition;
+            cachedOffset = offsets.get(new TopicPartition(topic, partition));
+        }
+        if (cachedOffset != null) {
+            cachedOffset.lazySet(offset + 1l);
+        }
+        nSubmitted.lazySet(nSubmitted.get() + 1l);
+    }
+
+    /**
+     * Tests whether a commit is due. Must be called by the event thread.
+     * @return `true` if records have been submitted since last commit, and the commit count is reached or the commit period has elapsed.
+     */
+    public boolean isCommitDue() {
+        final long n = nSubmitted.get() - nSubmittedAtLastCommit;
+        if (n <= 0) return false;
+        if (commitCount > 0 && n >= commitCount) return true;
+        return System.currentTimeMillis() - lastCommitTime >= commitPeriodMillis;
+    }
+
+    /**
+     * Commits the offsets of submitted records asynchronously. Must be called by the event thread.
+     * @param consumer the Kafka consumer
+     */
+    public void commitAsync(Consumer<?, ?> consumer) {
+        final Map<TopicPartition, OffsetAndMetadata> offsets = collectUncommittedOffsets();
+        if (!offsets.isEmpty()) {
+            if (logger.isDebugEnabled()) logger.debug("committing offsets asynchronously: " + offsets); //$NON-NLS-1$
+            consumer.commitAsync(offsets, commitCallback);
+        }
+    }
+
+    /**
+     * Commits the offsets of submitted records synchronously. Must be called by the event thread.
+     * @param consumer the Kafka consumer
+     */
+    public void commitSync(Consumer<?, ?> consumer) {
+        final Map<TopicPartition, OffsetAndMetadata> offsets = collectUncommittedOffsets();
+        if (!offsets.isEmpty()) {
+            if (logger.isDebugEnabled()) logger.debug("committing offsets synchronously: " + offsets); //$NON-NLS-1$
+            consumer.commitSync(offsets);
+        }
+    }
+
+    /**
+     * Collects the offsets that have changed since last commit and marks them as committed.
+     * @return the offsets to commit
+     */
+    private Map<TopicPartition, OffsetAndMetadata> collectUncommittedOffsets() {
+        nSubmittedAtLastCommit = nSubmitted.get();
+        lastCommitTime = System.currentTimeMillis();
+        final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        submittedOffsets.forEach((tp, submittedOffset) -> {
+            final long offset = submittedOffset.get();
+            if (offset >= 0) {
+                final Long committed = committedOffsets.get(tp);
+                if (committed == null || committed.longValue() != offset) {
+                    offsets.put(tp, new OffsetAndMetadata(offset));
+                    committedOffsets.put(tp, offset);
+                }
+            }
+        });
+        return offsets;
+    }
+}
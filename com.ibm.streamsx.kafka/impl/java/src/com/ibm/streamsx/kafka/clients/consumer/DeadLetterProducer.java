@@ -0,0 +1,105 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.log4j.Logger;
+
+import com.ibm.streamsx.kafka.LogThrottle;
+
+/**
+ * Forwards the raw bytes of malformed records to a dead-letter topic.
+ *
+ * The records are sent asynchronously with an embedded producer, which connects to the same cluster as the consumer.
+ * The key, value, timestamp, and headers of the original record are kept. The origin of the record is added
+ * in the headers {@value #ORIGINAL_TOPIC_HEADER}, {@value #ORIGINAL_PARTITION_HEADER}, and {@value #ORIGINAL_OFFSET_HEADER}
+ * as UTF-8 strings. Failures to send are logged at most once in {@value #FAILURE_LOG_INTERVAL_SECONDS} seconds.
+ */
+class DeadLetterProducer {
+
+    private static final Logger logger = Logger.getLogger(DeadLetterProducer.class);
+    static final String ORIGINAL_TOPIC_HEADER = "streamsx.kafka.original.topic"; //$NON-NLS-1$
+    static final String ORIGINAL_PARTITION_HEADER = "streamsx.kafka.original.partition"; //$NON-NLS-1$
+    static final String ORIGINAL_OFFSET_HEADER = "streamsx.kafka.original.offset"; //$NON-NLS-1$
+    private static final long FAILURE_LOG_INTERVAL_SECONDS = 10;
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    private final String topic;
+    private final Producer<byte[], byte[]> producer;
+    private final LogThrottle failureLogThrottle = new LogThrottle(FAILURE_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    /**
+     * Constructs a new DeadLetterProducer.
+     * @param consumerProperties the properties of the consumer; the properties that are also producer configs are used for the producer
+     * @param topic              the dead-letter topic
+     */
+    DeadLetterProducer(Properties consumerProperties, String topic) {
+        this(new KafkaProducer<byte[], byte[]>(createProducerProperties(consumerProperties)), topic);
+    }
+
+    /**
+     * Constructs a new DeadLetterProducer that sends with the given producer.
+     * @param producer the producer, which is closed by {@link #close()}
+     * @param topic    the dead-letter topic
+     */
+    DeadLetterProducer(Producer<byte[], byte[]> producer, String topic) {
+        this.topic = topic;
+        this.producer = producer;
+        logger.info("forwarding malformed records to topic " + topic); //$NON-NLS-1$
+    }
+
+    private static Properties createProducerProperties(Properties consumerProperties) {
+        final Set<String> producerConfigs = ProducerConfig.configNames();
+        final Properties producerProperties = new Properties();
+        consumerProperties.forEach((k, v) -> {
+            if (producerConfigs.contains(k.toString())) producerProperties.put(k, v);
+        });
+        producerProperties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getCanonicalName());
+        producerProperties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getCanonicalName());
+        producerProperties.put(ProducerConfig.CLIENT_ID_CONFIG, consumerProperties.getProperty(ConsumerConfig.CLIENT_ID_CONFIG) + "-dlt"); //$NON-NLS-1$
+        return producerProperties;
+    }
+
+    /**
+     * Sends the raw record to the dead-letter topic without waiting for the acknowledgement.
+     * This method can be called by multiple threads.
+     * @param record the raw record
+     */
+    void send(ConsumerRecord<byte[], byte[]> record) {
+        final List<Header> headers = new ArrayList<>();
+        record.headers().forEach(headers::add);
+        headers.add(new RecordHeader(ORIGINAL_TOPIC_HEADER, record.topic().getBytes(StandardCharsets.UTF_8)));
+        headers.add(new RecordHeader(ORIGINAL_PARTITION_HEADER, Integer.toString(record.partition()).getBytes(StandardCharsets.UTF_8)));
+        headers.add(new RecordHeader(ORIGINAL_OFFSET_HEADER, Long.toString(record.offset()).getBytes(StandardCharsets.UTF_8)));
+        final Long timestamp = record.timestamp() >= 0? record.timestamp(): null;
+        producer.send(new ProducerRecord<byte[], byte[]>(topic, null, timestamp, record.key(), record.value(), headers), (metadata, e) -> {
+            if (e != null) {
+                final long nSuppressed = failureLogThrottle.tryLog();
+                if (nSuppressed >= 0) {
+                    logger.error("failed to forward malformed record " + record.topic() + "-" + record.partition() + "[" + record.offset() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                            + "] to topic " + topic + ": " + e.getLocalizedMessage() + LogThrottle.suppressedSuffix(nSuppressed)); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends the pending records and closes the producer.
+     */
+    void close() {
+        producer.close(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+}
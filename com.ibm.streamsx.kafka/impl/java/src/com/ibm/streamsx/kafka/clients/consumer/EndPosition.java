@@ -0,0 +1,5 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+public enum EndPosition {
+    End, Time, Offset;
+}
@@ -6,26 +6,34 @@ import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.log4j.Logger;
 
 import com.ibm.streams.operator.OperatorContext;
@@ -42,30 +50,71 @@ import com.ibm.streamsx.kafka.properties.KafkaOperatorProperties;
 public class KafkaConsumerClient extends AbstractKafkaClient implements ConsumerRebalanceListener {
 
     private static final Logger logger = Logger.getLogger(KafkaConsumerClient.class);
-    private static final long EVENT_LOOP_PAUSE_TIME = 100;
     private static final long CONSUMER_TIMEOUT_MS = 2000;
     private static final int MESSAGE_QUEUE_SIZE_MULTIPLIER = 100;
+    /** maximum number of batches in the message queue, independent of the number of records */
+    private static final int MESSAGE_QUEUE_BATCH_SLOTS = 1024;
+    /** time that the thread calling getNextRecord() waits while the group rebalances */
+    private static final long REBALANCE_WAIT_MS = 10;
     private static final int DEFAULT_MAX_POLL_RECORDS_CONFIG = 500;
     private static final long DEFAULT_MAX_POLL_INTERVAL_MS_CONFIG = 300000;
+    public static final long DEFAULT_COMMIT_PERIOD_MS = 5000;
     private static final String GENERATED_GROUPID_PREFIX = "group-"; //$NON-NLS-1$
     private static final String GENERATED_CLIENTID_PREFIX = "client-"; //$NON-NLS-1$
 
     private KafkaConsumer<?, ?> consumer;
-    private OffsetManager offsetManager;
+    /** replaced by the event thread on reset; read by the submitting threads and the checkpointing thread */
+    private volatile OffsetManager offsetManager;
 
     private KafkaOperatorProperties kafkaProperties;
     private ControlVariableAccessor<String> offsetManagerCV;
+    /** creates and restores the checkpoint data of the offset manager; `null` when not in a consistent region */
+    private OffsetCheckpointer offsetCheckpointer;
 
-    private BlockingQueue<ConsumerRecord<?, ?>> messageQueue;
+    /** queue of polled record batches; its capacity is limited in number of records, not number of batches */
+    private SpscRingBuffer<QueuedBatch> messageQueue;
+    /**
+     * a polled batch that did not fit into the message queue; it is counted in {@link #numQueuedRecords}.
+     * Written only by the event thread, which keeps fetching paused until the batch has been queued.
+     */
+    private volatile QueuedBatch overflowBatch = null;
+    /** number of records in all batches of the message queue and in the overflow batch */
+    private AtomicInteger numQueuedRecords;
+    /** number of queued records of all clients of the operator; the value of the nPendingMessages metric */
+    private AtomicInteger numPendingMessages;
+    /** the batch that is currently drained by the thread that calls {@link #getNextRecord()} */
+    private Iterator<? extends ConsumerRecord<?, ?>> currentBatch;
+    /** the assignment epoch up to which the records of the current batch have been checked for lost partitions */
+    private int currentBatchEpoch;
+    /**
+     * incremented by the event thread when partitions have been assigned by the group coordinator after a rebalance.
+     * Queued records of an older epoch are checked against {@link #lostPartitionEpochs}.
+     */
+    private volatile int assignmentEpoch = 0;
+    /**
+     * the partitions that have been revoked and not assigned again, mapped to the assignment epoch that started without them.
+     * Queued records of these partitions polled in an earlier epoch are dropped, so that they are not submitted after
+     * another consumer has taken over their partitions. Written by the event thread.
+     */
+    private final Map<TopicPartition, Integer> lostPartitionEpochs = new ConcurrentHashMap<>();
+    /** `true` between revocation and assignment of partitions; no records are handed out while the group rebalances */
+    private volatile boolean rebalancing = false;
+    /** the fetch positions of the partitions on last revocation; accessed only by the event thread */
+    private Map<TopicPartition, Long> revokedPositions = Collections.emptyMap();
     private BlockingQueue<Event> eventQueue;
     private AtomicBoolean processing;
 
     private CountDownLatch consumerInitLatch;
-    private CountDownLatch checkpointingLatch;
     private CountDownLatch resettingLatch;
     private CountDownLatch shutdownLatch;
     private CountDownLatch pollingStoppedLatch;
-    private CountDownLatch updateAssignmentLatch;
+    private final Object pendingUpdateLock = new Object();
+    /** partitions to be added by the next assignment update, with their start offsets; guarded by pendingUpdateLock */
+    private Map<TopicPartition, Long> pendingAdds = new HashMap<>();
+    /** partitions to be removed by the next assignment update; guarded by pendingUpdateLock */
+    private Set<TopicPartition> pendingRemoves = new HashSet<>();
+    /** `true` when an update event has been posted, which has not yet taken the pending updates; guarded by pendingUpdateLock */
+    private boolean updateEventPosted = false;
     private OperatorContext operatorContext;
     private ConsistentRegionContext crContext;
     private Collection<Integer> partitions;
@@ -75,9 +124,46 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     private long lastPollTimestamp = 0;
     private long maxPollIntervalMs;
     private boolean autoCommitEnabled = false;
+    /** commits the offsets of submitted records; `null` when auto commit is enabled */
+    private CommitManager commitManager;
+    /** processes the polled records on the event thread; `null` when records are handed over via the message queue */
+    private RecordHandler recordHandler;
+    /** deserializes the polled raw records on worker threads; `null` when the Kafka consumer deserializes */
+    private ParallelDeserializer parallelDeserializer;
+    /** forwards malformed records to the dead-letter topic; `null` when malformed records are submitted */
+    private DeadLetterProducer deadLetterProducer;
     private Thread eventThread;
+    /** index of this client within the clients of the operator */
+    private final int clientIndex;
+    /** the partitions consumed by this client within all clients that share the partitions, which are the clients of all channels when assigning by channel */
+    private final PartitionShare partitionShare;
+    /** `true` when the partitions are assigned by channel, so that the consumer never subscribes */
+    private final boolean assignByChannel;
+    /** `true` when the event thread has paused all assigned partitions because the message queue is full */
+    private volatile boolean fetchPaused = false;
+    /** `true` when the record handler has delayed fetching until {@link #fetchDelayedUntilNanos}; accessed only by the event thread */
+    private boolean fetchDelayed = false;
+    private long fetchDelayedUntilNanos = 0;
+    private final Object wakeupLock = new Object();
+    /** `true` while the event thread is in the poll loop; guarded by wakeupLock */
+    private boolean inPollLoop = false;
+    /** `true` when `consumer.wakeup()` has been called, but the WakeupException not yet been caught; guarded by wakeupLock */
+    private boolean wakeupPending = false;
 
     private final Metric nPendingMessages;
+    /** the end of a bounded consumption; `null` when the consumption is not bounded */
+    private final EndPosition endPosition;
+    private final long endTime;
+    /** the end offsets given by the user; only used with {@link EndPosition#Offset} */
+    private final Map<TopicPartition, Long> userEndOffsets;
+    /** the offsets of the first records that are not consumed; determined by the event thread when polling starts */
+    private Map<TopicPartition, Long> endOffsets = null;
+    /** the partitions whose end offset has not been reached; accessed only by the event thread */
+    private Set<TopicPartition> unfinishedPartitions = null;
+    /** set by the event thread after the last record before the end position has been handed over */
+    private volatile boolean endOfData = false;
+    /** set when the Kafka consumer has been closed */
+    private volatile boolean closed = false;
     
     /**
      * Callback to notify that topic partitions have been assigned by the group coordinator to the consumer.
@@ -91,6 +177,29 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     @Override
     public void onPartitionsAssigned (Collection<TopicPartition> partitions) {
         logger.info("onPartitionsAssigned: " + partitions);
+        if (commitManager != null) {
+            commitManager.setAssignment(partitions);
+            // drop the queued records of the partitions that have been revoked and not assigned again
+            final int epoch = assignmentEpoch + 1;
+            revokedPositions.keySet().forEach(tp -> {
+                if (!partitions.contains(tp)) lostPartitionEpochs.put(tp, epoch);
+            });
+            assignmentEpoch = epoch;
+            // The queued records of the partitions that have been assigned again are kept. The consumer has reset their positions
+            // to the committed offsets; continue behind the queued records. Partitions that have not been assigned to this
+            // consumer before start at the positions committed by their previous owner.
+            for (TopicPartition tp: partitions) {
+                final Long offset = revokedPositions.get(tp);
+                if (offset != null) {
+                    logger.debug("seeking " + tp + " to fetch position " + offset); //$NON-NLS-1$ //$NON-NLS-2$
+                    consumer.seek(tp, offset);
+                }
+            }
+            revokedPositions = Collections.emptyMap();
+            rebalancing = false;
+        }
+        // newly assigned partitions are not paused; keep the backpressure
+        if (fetchPaused) consumer.pause(partitions);
     }
 
     /**
@@ -105,12 +214,35 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     @Override
     public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
         logger.info("onPartitionsRevoked: " + partitions);
+        if (commitManager != null) {
+            // Stop handing out queued records until the new assignment is known. Then the queued records of the partitions
+            // that are not assigned again are dropped, so that they are not submitted twice, by this consumer and by the
+            // group member that takes over the partitions. The queued records of the other partitions are kept.
+            // With auto commit, the consumer commits the fetch positions before the rebalance, so that the next owner
+            // continues behind the queued records; they are submitted then, and nothing is dropped.
+            rebalancing = true;
+            // commit what has been submitted before another group member takes over the partitions
+            commitManager.commitSync(consumer);
+            final Map<TopicPartition, Long> positions = new HashMap<>();
+            for (TopicPartition tp: partitions) {
+                try {
+                    positions.put(tp, consumer.position(tp));
+                } catch (KafkaException e) {
+                    // no position, so that no records of the partition are queued
+                    logger.debug("no position for revoked partition " + tp + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+            revokedPositions = positions;
+            commitManager.setAssignment(Collections.emptyList());
+        }
     }
     
 
     private <K, V> KafkaConsumerClient(OperatorContext operatorContext, Class<K> keyClass, Class<V> valueClass,
-            KafkaOperatorProperties kafkaProperties)
-                    throws Exception {
+            KafkaOperatorProperties kafkaProperties, WaitStrategy queueWaitStrategy, long commitCount, long commitPeriodMs,
+            RecordHandler recordHandler, int deserializationThreads, int clientIndex, int numClients, AtomicInteger numPendingMessages,
+            int fullCheckpointInterval, int channel, int maxChannels,
+            EndPosition endPosition, long endTime, Map<TopicPartition, Long> endOffsets, String deadLetterTopic) throws Exception {
         this.kafkaProperties = kafkaProperties;
         if (!this.kafkaProperties.containsKey(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG)) {
             this.kafkaProperties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, getDeserializer(keyClass));
@@ -133,20 +265,67 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
             this.kafkaProperties.put(ConsumerConfig.CLIENT_ID_CONFIG, getRandomId(GENERATED_CLIENTID_PREFIX));
         }
 
+        if (clientIndex > 0) {
+            // the clients of an operator share the group ID, but must have different client IDs
+            this.kafkaProperties.put(ConsumerConfig.CLIENT_ID_CONFIG, kafkaProperties.getProperty(ConsumerConfig.CLIENT_ID_CONFIG) + "-" + clientIndex); //$NON-NLS-1$
+        }
+        this.clientIndex = clientIndex;
+        this.assignByChannel = channel >= 0 && maxChannels > 0;
+        this.partitionShare = PartitionShare.of(clientIndex, numClients, channel, maxChannels);
+
         // if not explicitly configured, disable auto commit
         if (!kafkaProperties.containsKey(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG)) {
             this.kafkaProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
         }
         autoCommitEnabled = this.kafkaProperties.getProperty (ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG).equalsIgnoreCase ("true");
+        if (!autoCommitEnabled) {
+            commitManager = new CommitManager(commitCount, commitPeriodMs);
+        }
 
+        this.recordHandler = recordHandler;
+        final Properties consumerProperties;
+        if (deserializationThreads > 0 || deadLetterTopic != null) {
+            // the Kafka consumer fetches raw bytes; the configured deserializers are used by the worker threads,
+            // or by the event thread when only the raw bytes of malformed records are needed for the dead-letter topic
+            Consumer<ConsumerRecord<byte[], byte[]>> malformedRecordHandler = null;
+            if (deadLetterTopic != null) {
+                deadLetterProducer = new DeadLetterProducer(kafkaProperties, deadLetterTopic);
+                final Metric nMalformedMessages = operatorContext.getMetrics().getCustomMetric("nDroppedMalformedMessages"); //$NON-NLS-1$
+                malformedRecordHandler = raw -> {
+                    deadLetterProducer.send(raw);
+                    nMalformedMessages.increment();
+                };
+            }
+            parallelDeserializer = new ParallelDeserializer(kafkaProperties,
+                    kafkaProperties.get(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG),
+                    kafkaProperties.get(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG),
+                    deserializationThreads, operatorContext.getThreadFactory(), malformedRecordHandler);
+            consumerProperties = new Properties();
+            consumerProperties.putAll(kafkaProperties);
+            consumerProperties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getCanonicalName());
+            consumerProperties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getCanonicalName());
+        }
+        else {
+            consumerProperties = kafkaProperties;
+        }
         maxPollRecords = getMaxPollRecords();
         maxPollIntervalMs = getMaxPollIntervalMs();
-        messageQueue = new LinkedBlockingQueue<ConsumerRecord<?, ?>>(getMessageQueueSize());
+        // the message queue has exactly one producer (the event thread) and one consumer (the tuple submitter)
+        messageQueue = new SpscRingBuffer<QueuedBatch>(MESSAGE_QUEUE_BATCH_SLOTS, queueWaitStrategy);
+        numQueuedRecords = new AtomicInteger(0);
+        this.numPendingMessages = numPendingMessages == null? new AtomicInteger(0): numPendingMessages;
         eventQueue = new LinkedBlockingQueue<Event>();
         processing = new AtomicBoolean(false);
         this.operatorContext = operatorContext;
         crContext = operatorContext.getOptionalContext(ConsistentRegionContext.class);
+        if (crContext != null) {
+            offsetCheckpointer = new OffsetCheckpointer(operatorContext.getOptionalContext(ControlPlaneContext.class),
+                    getOffsetManagerCVName(), fullCheckpointInterval);
+        }
         this.partitions = partitions == null ? Collections.emptyList() : partitions;
+        this.endPosition = endPosition;
+        this.endTime = endTime;
+        this.userEndOffsets = endOffsets == null? Collections.emptyMap(): endOffsets;
 
         this.nPendingMessages = operatorContext.getMetrics().getCustomMetric("nPendingMessages");
         
@@ -156,15 +335,24 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
             @Override
             public void run() {
                 try {
-                    consumer = new KafkaConsumer<>(kafkaProperties);
+                    consumer = new KafkaConsumer<>(consumerProperties);
                     offsetManager = new OffsetManager(consumer);
-                    
-                    consumerInitLatch.countDown(); // consumer is ready
-                    startEventLoop();
                 } catch (Exception e) {
                 	// store the exception...will be thrown from the calling operator
                 	initializationException = e;
                 	consumerInitLatch.countDown(); // remove lock
+                	return;
+                }
+                consumerInitLatch.countDown(); // consumer is ready
+                try {
+                    startEventLoop();
+                } catch (InterruptedException e) {
+                    logger.debug("Event thread interrupted"); //$NON-NLS-1$
+                } catch (Exception e) {
+                    logger.error("Event thread error", e); //$NON-NLS-1$
+                    // Propagate all exceptions to the runtime to make the PE fail and possibly restart.
+                    // This includes exceptions thrown by the record handler when tuples are submitted directly.
+                    throw new RuntimeException(e);
                 }
             }
         });
@@ -207,6 +395,26 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
 		return topicPartitions;
     }
     
+    /**
+     * Tests whether a partition is consumed by this client when the partitions are assigned to the clients of the operator,
+     * or to the clients of all channels of a parallel region when assigning by channel.
+     * The partitions of a topic are distributed round-robin over the clients.
+     * @param tp the topic partition
+     * @return `true`, if this client consumes the partition, `false` otherwise.
+     */
+    private boolean isOwnPartition(TopicPartition tp) {
+        return partitionShare.contains(tp);
+    }
+
+    private List<TopicPartition> getOwnPartitions(List<TopicPartition> topicPartitions) {
+        if (partitionShare.getCount() <= 1) return topicPartitions;
+        List<TopicPartition> ownPartitions = new ArrayList<>(topicPartitions.size() / partitionShare.getCount() + 1);
+        topicPartitions.forEach(tp -> {
+            if (isOwnPartition(tp)) ownPartitions.add(tp);
+        });
+        return ownPartitions;
+    }
+
     public void subscribeToTopics(Collection<String> topics, Collection<Integer> partitions, StartPosition startPosition) throws Exception {
     	logger.debug("subscribeToTopics: topics=" + topics + ", partitions=" + partitions + ", startPosition=" + startPosition);
     	assert startPosition != StartPosition.Time && startPosition != StartPosition.Offset;
@@ -214,17 +422,20 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     	if(topics != null && !topics.isEmpty()) {
     		if(partitions == null || partitions.isEmpty()) {
     			// no partition information provided
-    			if(!isConsistentRegionEnabled() && startPosition == StartPosition.Default) {
+    			if(!isConsistentRegionEnabled() && !assignByChannel && endPosition == null && startPosition == StartPosition.Default) {
     				subscribe(topics);	
     			} else {
-        			List<TopicPartition> topicPartitions = getAllTopicPartitionsForTopic(topics);
+        			List<TopicPartition> topicPartitions = getOwnPartitions(getAllTopicPartitionsForTopic(topics));
         			assign(topicPartitions);
         			seekToPosition(topicPartitions, startPosition);    				
     			}    			
     		} else {
     			List<TopicPartition> topicPartitions = new ArrayList<TopicPartition>();
     	    	topics.forEach(topic -> {
-    	    		partitions.forEach(partition -> topicPartitions.add(new TopicPartition(topic, partition)));
+    	    		partitions.forEach(partition -> {
+    	    		    TopicPartition tp = new TopicPartition(topic, partition);
+    	    		    if (isOwnPartition(tp)) topicPartitions.add(tp);
+    	    		});
     	    	});
     	    	
     	    	assign(topicPartitions);
@@ -246,11 +457,14 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     	logger.debug("subscribeToTopicsWithTimestamp: topic=" + topics + ", partitions=" + partitions + ", timestamp=" + timestamp);
     	Map<TopicPartition, Long /* timestamp */> topicPartitionTimestampMap = new HashMap<TopicPartition, Long>();
     	if(partitions == null || partitions.isEmpty()) {
-    		List<TopicPartition> topicPartitions = getAllTopicPartitionsForTopic(topics);
+    		List<TopicPartition> topicPartitions = getOwnPartitions(getAllTopicPartitionsForTopic(topics));
     		topicPartitions.forEach(tp -> topicPartitionTimestampMap.put(tp, timestamp));
     	} else {
     		topics.forEach(topic -> {
-    			partitions.forEach(partition -> topicPartitionTimestampMap.put(new TopicPartition(topic, partition), timestamp));
+    			partitions.forEach(partition -> {
+    			    TopicPartition tp = new TopicPartition(topic, partition);
+    			    if (isOwnPartition(tp)) topicPartitionTimestampMap.put(tp, timestamp);
+    			});
     		});
     	}
         logger.debug("subscribeToTopicsWithTimestamp: topicPartitionTimestampMap = " + topicPartitionTimestampMap);
@@ -265,6 +479,13 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     }
     
     public void subscribeToTopicsWithOffsets(Map<TopicPartition, Long> topicPartitionOffsetMap) throws Exception {
+    	if (partitionShare.getCount() > 1 && topicPartitionOffsetMap != null) {
+    	    Map<TopicPartition, Long> ownOffsets = new HashMap<>();
+    	    topicPartitionOffsetMap.forEach((tp, offset) -> {
+    	        if (isOwnPartition(tp)) ownOffsets.put(tp, offset);
+    	    });
+    	    topicPartitionOffsetMap = ownOffsets;
+    	}
     	logger.debug("subscribeToTopicsWithOffsets: topicPartitionOffsetMap=" + topicPartitionOffsetMap);
     	if(topicPartitionOffsetMap != null && !topicPartitionOffsetMap.isEmpty()) {
     		assign(topicPartitionOffsetMap.keySet());
@@ -301,11 +522,16 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     private void saveOffsetManagerToJCP() throws Exception {
         ControlPlaneContext controlPlaneContext = operatorContext
                 .getOptionalContext(ControlPlaneContext.class);
-        offsetManagerCV = controlPlaneContext.createStringControlVariable(OffsetManager.class.getName(),
-                false, serializeObject(offsetManager));
+        offsetManagerCV = controlPlaneContext.createStringControlVariable(getOffsetManagerCVName(),
+                false, Base64.getEncoder().encodeToString(offsetManager.toByteArray()));
         OffsetManager mgr = getDeserializedOffsetManagerCV();
         logger.debug("Retrieved value for offsetManagerCV=" + mgr);	
     }
+
+    private String getOffsetManagerCVName() {
+        // every client of the operator has its own offset manager
+        return clientIndex == 0? OffsetManager.class.getName(): OffsetManager.class.getName() + "." + clientIndex; //$NON-NLS-1$
+    }
     
     private void subscribe(Collection<String> topics) {
         logger.info("Subscribing: topics=" + topics); //$NON-NLS-1$
@@ -329,6 +555,7 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     		topicPartitionMap.forEach((topic, tpList) -> offsetManager.addTopic(topic, tpList));
     	
     	consumer.assign(topicPartitions);
+    	if (commitManager != null) commitManager.setAssignment(topicPartitions);
     	isAssignedToTopics = true;
     }
     
@@ -373,12 +600,39 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     }
 
     private void poll(long timeout) throws Exception {
+        if (endPosition != null && endOffsets == null) {
+            initEndOffsets();
+        }
+        if (endOfData) {
+            logger.debug("End position reached; polling not started"); //$NON-NLS-1$
+            return;
+        }
+        if (consumer.assignment().isEmpty() && consumer.subscription().isEmpty()) {
+            // nothing to poll, for example when there are more clients than partitions; wait for the next event
+            logger.debug("Consumer neither assigned nor subscribed; polling not started"); //$NON-NLS-1$
+            return;
+        }
         logger.debug("Initiating polling..."); //$NON-NLS-1$
-        // continue polling for messages until a new event
-        // arrives in the event queue
-        while (eventQueue.isEmpty()) {
-            int remainingCapacityMsgQ = messageQueue.remainingCapacity();
-            if (remainingCapacityMsgQ >= maxPollRecords) {
+        // start with all partitions fetchable; the partitions are paused again below when the queue is full
+        resumeUnfinishedPartitions();
+        fetchPaused = false;
+        synchronized (wakeupLock) {
+            inPollLoop = true;
+        }
+        try {
+            // continue polling for messages until a new event
+            // arrives in the event queue, or until the end position of a bounded consumption is reached
+            while (eventQueue.isEmpty() && (!endOfData || overflowBatch != null)) {
+                // Backpressure: When the message queue has not enough room for another batch, the assigned partitions
+                // are paused instead of skipping the poll. Polling continues, so that the group membership is
+                // kept alive and 'max.poll.interval.ms' is not exceeded. Partitions are resumed as soon as the tuple
+                // submitter has taken enough records; it then wakes up this thread, which may be blocked in poll.
+                if (overflowBatch != null) offerOverflowBatch();
+                if (!isFetchAllowed()) {
+                    if (!fetchPaused) pauseFetching();
+                } else if (fetchPaused) {
+                    resumeFetching();
+                }
                 try {
                     long now = System.currentTimeMillis();
                     long timeBetweenPolls = now -lastPollTimestamp;
@@ -392,23 +646,69 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
                         }
                     }
                     if (logger.isTraceEnabled()) logger.trace("Polling for records..."); //$NON-NLS-1$
-                    ConsumerRecords<?, ?> records = consumer.poll(timeout);
+                    // do not sleep in poll when the delay of the record handler ends earlier
+                    final long pollTimeout = fetchDelayed?
+                            Math.max(0, Math.min(timeout, TimeUnit.NANOSECONDS.toMillis(fetchDelayedUntilNanos - System.nanoTime()) + 1)): timeout;
+                    ConsumerRecords<?, ?> records = consumer.poll(pollTimeout);
+                    if (parallelDeserializer != null && !records.isEmpty()) {
+                        @SuppressWarnings("unchecked")
+                        ConsumerRecords<byte[], byte[]> rawRecords = (ConsumerRecords<byte[], byte[]>) records;
+                        records = parallelDeserializer.deserialize(rawRecords);
+                    }
+                    if (endOffsets != null && !records.isEmpty()) {
+                        records = trimToEndOffsets(records);
+                    }
                     int numRecords = records == null? 0: records.count();
                     if (logger.isTraceEnabled() && numRecords == 0) logger.trace("# polled records: " + (records == null? "0 (records == null)": "0"));
                     lastPollTimestamp = System.currentTimeMillis();
                     if (numRecords > 0) {
-                        if (logger.isDebugEnabled()) logger.debug("# polled records: " + numRecords);
-                        records.forEach(cr -> {
-                            if (logger.isDebugEnabled()) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("# polled records: " + numRecords);
+                            records.forEach(cr -> {
                                 logger.debug(cr.topic() + "-" + cr.partition() + " key=" + cr.key() + " - offset=" + cr.offset()); //$NON-NLS-1$
+                            });
+                        }
+                        if (recordHandler != null) {
+                            // direct submission: no queue, no thread hop
+                            final Iterator<? extends ConsumerRecord<?, ?>> batch = records.iterator();
+                            while (batch.hasNext()) {
+                                final ConsumerRecord<?, ?> record = batch.next();
+                                final long delayNanos = recordHandler.getDelayNanos(record);
+                                if (delayNanos > 0) {
+                                    delayFetching(record, batch, delayNanos);
+                                    break;
+                                }
+                                recordHandler.handle(record);
+                                recordSubmitted(record);
+                            }
+                            recordHandler.endOfBatch();
+                        }
+                        else {
+                            // the whole batch goes into the queue with one single queue operation
+                            numQueuedRecords.addAndGet(numRecords);
+                            numPendingMessages.addAndGet(numRecords);
+                            final QueuedBatch batch = new QueuedBatch(records, assignmentEpoch);
+                            if (!messageQueue.offer(batch)) {
+                                // no free batch slot; the records are already consumed, so keep them until a slot is free
+                                overflowBatch = batch;
+                                if (!fetchPaused) pauseFetching();
                             }
-                            messageQueue.add(cr);
-                        });
-                        nPendingMessages.setValue(messageQueue.size());
-                        if (!autoCommitEnabled) consumer.commitSync();
-                    } else {
-                        nPendingMessages.setValue(messageQueue.size());
+                        }
                     }
+                    if (endOffsets != null) {
+                        // set after the last batch has been queued, so that the submitter sees the records before the end
+                        endOfData = updateUnfinishedPartitions();
+                    }
+                    if (commitManager != null && commitManager.isCommitDue()) {
+                        commitManager.commitAsync(consumer);
+                    }
+                    nPendingMessages.setValue(numPendingMessages.get());
+                } catch (WakeupException e) {
+                    // woken up by a new event or by the tuple submitter, which has made room in the message queue
+                    synchronized (wakeupLock) {
+                        wakeupPending = false;
+                    }
+                    if (logger.isTraceEnabled()) logger.trace("Woken up from poll"); //$NON-NLS-1$
                 } catch (SerializationException e) {
                     // The default deserializers of the operator do not 
                     // throw SerializationException, but custom deserializers may throw...
@@ -417,16 +717,222 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
                     // https://issues.apache.org/jira/browse/KAFKA-4740)
                     throw e;
                 }
-            } else {
-                if (logger.isDebugEnabled()) {
-                    logger.debug ("remaining capacity in message queue (" + remainingCapacityMsgQ //$NON-NLS-1$
-                            + ") < maxPollRecords (" + maxPollRecords + "). Skipping poll cycle."); //$NON-NLS-1$
-                }
-                // prevent busy-wait
-                Thread.sleep(100);
             }
+        } finally {
+            boolean absorbWakeup;
+            synchronized (wakeupLock) {
+                inPollLoop = false;
+                absorbWakeup = wakeupPending;
+                wakeupPending = false;
+            }
+            if (absorbWakeup) absorbPendingWakeup();
+        }
+        if (endOfData) {
+            logger.info("Stop polling, end position reached"); //$NON-NLS-1$
+        }
+        else {
+            logger.debug("Stop polling, message in event queue: " + eventQueue.peek().getEventType()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Determines the end offsets of the assigned partitions for a bounded consumption.
+     * The partitions, whose position is already at or after the end offset, are finished.
+     * Must be called by the event thread after the consumer has been assigned and moved to the start position.
+     */
+    private void initEndOffsets() {
+        final Set<TopicPartition> assignment = consumer.assignment();
+        final Map<TopicPartition, Long> latestOffsets = consumer.endOffsets(assignment);
+        endOffsets = new HashMap<>(latestOffsets);
+        if (endPosition == EndPosition.Time) {
+            // the earliest offset whose timestamp is greater than or equal to the end time; the latest offset, when there is no such offset
+            final Map<TopicPartition, Long> topicPartitionTimestampMap = new HashMap<>();
+            assignment.forEach(tp -> topicPartitionTimestampMap.put(tp, endTime));
+            consumer.offsetsForTimes(topicPartitionTimestampMap).forEach((tp, ot) -> {
+                if (ot != null) endOffsets.put(tp, ot.offset());
+            });
+        }
+        else if (endPosition == EndPosition.Offset) {
+            userEndOffsets.forEach((tp, offset) -> {
+                if (endOffsets.containsKey(tp)) endOffsets.put(tp, offset);
+            });
+        }
+        logger.info("end offsets for bounded consumption: " + endOffsets); //$NON-NLS-1$
+        unfinishedPartitions = new HashSet<>(assignment);
+        endOfData = updateUnfinishedPartitions();
+    }
+
+    /**
+     * Removes the partitions, whose position has reached the end offset, from the unfinished partitions, and pauses them.
+     * Must be called by the event thread.
+     * @return `true` when all partitions are finished, `false` otherwise.
+     */
+    private boolean updateUnfinishedPartitions() {
+        final List<TopicPartition> finished = new ArrayList<>();
+        for (TopicPartition tp: unfinishedPartitions) {
+            if (consumer.position(tp) >= endOffsets.get(tp)) finished.add(tp);
+        }
+        if (!finished.isEmpty()) {
+            logger.info("end offset reached for " + finished); //$NON-NLS-1$
+            unfinishedPartitions.removeAll(finished);
+            consumer.pause(finished);
+        }
+        return unfinishedPartitions.isEmpty();
+    }
+
+    /**
+     * Removes the records at and after the end offsets from the polled records.
+     * @param records the polled records
+     * @return the records before the end offsets; the given object when no record is removed
+     */
+    private ConsumerRecords<?, ?> trimToEndOffsets(ConsumerRecords<?, ?> records) {
+        boolean trim = false;
+        for (TopicPartition tp: records.partitions()) {
+            final List<? extends ConsumerRecord<?, ?>> partitionRecords = records.records(tp);
+            if (partitionRecords.get(partitionRecords.size() - 1).offset() >= endOffsets.get(tp)) {
+                trim = true;
+                break;
+            }
+        }
+        if (!trim) return records;
+        final Map<TopicPartition, List<ConsumerRecord<Object, Object>>> retained = new HashMap<>();
+        for (TopicPartition tp: records.partitions()) {
+            final long endOffset = endOffsets.get(tp);
+            final List<ConsumerRecord<Object, Object>> partitionRecords = new ArrayList<>();
+            for (ConsumerRecord<?, ?> record: records.records(tp)) {
+                @SuppressWarnings("unchecked")
+                final ConsumerRecord<Object, Object> r = (ConsumerRecord<Object, Object>) record;
+                if (r.offset() < endOffset) partitionRecords.add(r);
+            }
+            if (!partitionRecords.isEmpty()) retained.put(tp, partitionRecords);
+        }
+        return new ConsumerRecords<Object, Object>(retained);
+    }
+
+    /**
+     * Resumes fetching from the assigned partitions, whose end offset has not been reached.
+     * Must be called by the event thread.
+     */
+    private void resumeUnfinishedPartitions() {
+        if (unfinishedPartitions == null) {
+            consumer.resume(consumer.assignment());
+        }
+        else {
+            consumer.resume(unfinishedPartitions);
+        }
+    }
+
+    /**
+     * Tests whether all records before the end position of a bounded consumption have been returned by {@link #getNextRecord()}.
+     * Must be called by the thread that calls {@link #getNextRecord()}.
+     * @return `true` when the end position has been reached and no more records are available, `false` otherwise.
+     */
+    public boolean isEndOfData() {
+        // read the overflow batch before the queue; the event thread queues the batch before it clears the field
+        return endOfData && overflowBatch == null && messageQueue.isEmpty() && (currentBatch == null || !currentBatch.hasNext());
+    }
+
+    /**
+     * Tries to insert the overflow batch into the message queue. Must be called by the event thread.
+     */
+    private void offerOverflowBatch() {
+        if (messageQueue.offer(overflowBatch)) {
+            overflowBatch = null;
+            if (logger.isDebugEnabled()) logger.debug("overflow batch queued"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Tests whether records can be fetched, i.e. the message queue has room for the records of another poll,
+     * and fetching is not delayed by the record handler. Must be called by the event thread.
+     * @return `true` if records can be fetched, `false` otherwise.
+     */
+    private boolean isFetchAllowed() {
+        if (fetchDelayed) {
+            if (System.nanoTime() - fetchDelayedUntilNanos < 0) return false;
+            fetchDelayed = false;
+        }
+        return hasQueueCapacity();
+    }
+
+    /**
+     * Stops handling the current batch because the record handler cannot handle the record now.
+     * The fetch positions of the partitions are moved back to the record and the following records of the batch,
+     * so that these records are fetched again after the delay. Must be called by the event thread.
+     * @param record     the first record that has not been handled
+     * @param remaining  the records of the batch after the record
+     * @param delayNanos the time in nanoseconds to pause fetching
+     */
+    private void delayFetching(ConsumerRecord<?, ?> record, Iterator<? extends ConsumerRecord<?, ?>> remaining, long delayNanos) {
+        final Map<TopicPartition, Long> rewindOffsets = new HashMap<>();
+        rewindOffsets.put(new TopicPartition(record.topic(), record.partition()), record.offset());
+        remaining.forEachRemaining(r -> rewindOffsets.putIfAbsent(new TopicPartition(r.topic(), r.partition()), r.offset()));
+        rewindOffsets.forEach((tp, offset) -> consumer.seek(tp, offset));
+        fetchDelayed = true;
+        fetchDelayedUntilNanos = System.nanoTime() + delayNanos;
+        if (logger.isTraceEnabled()) logger.trace("fetching delayed by " + delayNanos + " ns; rewound to " + rewindOffsets); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests whether the message queue has room for the records of another poll.
+     * @return `true` if no overflow batch is pending, and at least `max.poll.records` records and one more batch fit into the queue, `false` otherwise.
+     */
+    private boolean hasQueueCapacity() {
+        return overflowBatch == null && getMessageQueueSize() - numQueuedRecords.get() >= maxPollRecords && messageQueue.remainingCapacity() > 0;
+    }
+
+    /**
+     * Pauses fetching from all assigned partitions. Must be called by the event thread.
+     */
+    private void pauseFetching() {
+        consumer.pause(consumer.assignment());
+        fetchPaused = true;
+        if (logger.isDebugEnabled()) {
+            logger.debug("remaining capacity in message queue (" + (getMessageQueueSize() - numQueuedRecords.get()) //$NON-NLS-1$
+                    + ") < maxPollRecords (" + maxPollRecords + "), no free batch slot, or fetching delayed (" + fetchDelayed + "). Partitions paused."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        // the submitter may have taken records before it could see 'fetchPaused'
+        if (isFetchAllowed()) resumeFetching();
+    }
+
+    /**
+     * Resumes fetching from all assigned partitions. Must be called by the event thread.
+     */
+    private void resumeFetching() {
+        resumeUnfinishedPartitions();
+        fetchPaused = false;
+        if (logger.isDebugEnabled()) logger.debug("Partitions resumed."); //$NON-NLS-1$
+    }
+
+    /**
+     * Wakes up the event thread when it is blocked in `consumer.poll()` within the poll loop,
+     * either for a new event or for resuming paused partitions. This method can be called from any thread. Wakeups are only issued while the event thread is
+     * in the poll loop; a wakeup that has not been consumed when the loop is left is absorbed there.
+     */
+    private void wakeupPoll() {
+        synchronized (wakeupLock) {
+            if (inPollLoop && !wakeupPending) {
+                wakeupPending = true;
+                consumer.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Consumes a pending wakeup, so that it does not abort the next blocking consumer operation
+     * outside of the poll loop. All assigned partitions are paused during the absorbing poll,
+     * so that no records are fetched.
+     */
+    private void absorbPendingWakeup() {
+        final boolean wasPaused = fetchPaused;
+        consumer.pause(consumer.assignment());
+        try {
+            consumer.poll(0);
+        } catch (WakeupException e) {
+            logger.trace("pending wakeup absorbed"); //$NON-NLS-1$
+        } finally {
+            if (!wasPaused) resumeUnfinishedPartitions();
         }
-        logger.debug("Stop polling, message in event queue: " + eventQueue.peek().getEventType()); //$NON-NLS-1$
     }
 
     public boolean isAssignedToTopics() {
@@ -437,28 +943,27 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
         logger.debug("Event loop started!"); //$NON-NLS-1$
         processing.set(true);
         while (processing.get()) {
-            logger.debug("Checking event queue for message..."); //$NON-NLS-1$
-            Event event = eventQueue.poll(1, TimeUnit.SECONDS);
-
-            if (event == null) {
-                Thread.sleep(EVENT_LOOP_PAUSE_TIME);
-                continue;
-            }
+            logger.debug("Waiting for next event..."); //$NON-NLS-1$
+            // no polling timeouts or sleeps: events are taken as soon as they are posted,
+            // and posting an event wakes up this thread when it is blocked in consumer.poll()
+            Event event = eventQueue.take();
 
             logger.debug("Received event: " + event.getEventType().name()); //$NON-NLS-1$
             switch (event.getEventType()) {
             case START_POLLING:
                 poll((Long) event.getData());
+                if (endOfData && recordHandler != null) {
+                    // direct submission: all records have been handled
+                    recordHandler.endOfData();
+                    close();
+                }
                 break;
             case STOP_POLLING:
                 pollingStoppedLatch.countDown(); // indicates that polling has stopped
                 break;
             case UPDATE_ASSIGNMENT:
-            	updateAssignment(event.getData());
+            	updateAssignment();
             	break;
-            case CHECKPOINT:
-                checkpoint((Checkpoint) event.getData());
-                break;
             case RESET:
                 reset((Checkpoint) event.getData());
                 break;
@@ -467,150 +972,388 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
                 break;
             case SHUTDOWN:
                 shutdown();
+                break;
             default:
-                Thread.sleep(EVENT_LOOP_PAUSE_TIME);
                 break;
             }
         }
     }
 
-    private void updateAssignment(Object data) throws Exception {
-    	try {
-    		TopicPartitionUpdate update = (TopicPartitionUpdate)data;
-    		
-    		// get a map of current topic partitions and their offsets
-    		Map<TopicPartition, Long /* offset */> currentTopicPartitionOffsets = new HashMap<TopicPartition, Long>();
-    		
-    		Set<TopicPartition> topicPartitions = consumer.assignment();
-    		topicPartitions.forEach(tp -> currentTopicPartitionOffsets.put(tp, consumer.position(tp)));
-    		
-    		if(update.getAction() == TopicPartitionUpdateAction.ADD) {
-    			update.getTopicPartitionOffsetMap().forEach((tp, offset) -> {
-    				currentTopicPartitionOffsets.put(tp, offset);
-    			});
-    		} else if(update.getAction() == TopicPartitionUpdateAction.REMOVE) {
-    			update.getTopicPartitionOffsetMap().forEach((tp, offset) -> {
-    				currentTopicPartitionOffsets.remove(tp);
-    			});
-    		}
-    		
-    		subscribeToTopicsWithOffsets(currentTopicPartitionOffsets);	
-    	} finally {
-        	updateAssignmentLatch.countDown();
-    	}
-	}
+    /**
+     * Applies the pending assignment updates, which may have been merged from multiple updates.
+     * The update is incremental: only the added partitions are seeked, and only the positions of the added partitions are saved
+     * in a consistent region. The retained partitions keep their positions and the records that have already been fetched.
+     * Queued records of removed partitions are still submitted.
+     * Errors are logged; the consumer keeps its previous assignment then.
+     */
+    private void updateAssignment() {
+        final Map<TopicPartition, Long> adds;
+        final Set<TopicPartition> removes;
+        synchronized (pendingUpdateLock) {
+            adds = pendingAdds;
+            removes = pendingRemoves;
+            pendingAdds = new HashMap<>();
+            pendingRemoves = new HashSet<>();
+            updateEventPosted = false;
+        }
+        logger.debug("updateAssignment: add=" + adds + ", remove=" + removes); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            final Map<TopicPartition, Long> ownAdds = new HashMap<>();
+            adds.forEach((tp, offset) -> {
+                if (isOwnPartition(tp)) ownAdds.put(tp, offset);
+            });
+            final Set<TopicPartition> currentAssignment = consumer.assignment();
+            final Set<TopicPartition> newAssignment = new HashSet<>(currentAssignment);
+            newAssignment.removeAll(removes);
+            newAssignment.addAll(ownAdds.keySet());
+            if (!newAssignment.equals(currentAssignment)) {
+                // the consumer retains the fetch positions and fetched records of the partitions that remain assigned
+                logger.info("Assigning topic-partitions: " + newAssignment); //$NON-NLS-1$
+                consumer.assign(newAssignment);
+                if (commitManager != null) commitManager.setAssignment(newAssignment);
+                isAssignedToTopics = true;
+            }
+            if (ownAdds.isEmpty()) {
+                return;
+            }
+            seekToOffset(ownAdds);
+            if (isConsistentRegionEnabled()) {
+                final Map<String, List<TopicPartition>> topicPartitionMap = new HashMap<>();
+                ownAdds.keySet().forEach(tp -> topicPartitionMap.computeIfAbsent(tp.topic(), topic -> new ArrayList<>()).add(tp));
+                // the consumer offsets of the added partitions after moving their positions; can block, so query them before locking
+                final Map<TopicPartition, Long> positions = new HashMap<>();
+                ownAdds.keySet().forEach(tp -> positions.put(tp, consumer.position(tp)));
+                final OffsetManager offsetManager = this.offsetManager;
+                // the checkpoint thread serializes the offset manager concurrently; it must see all or none of the added partitions
+                synchronized (offsetManager) {
+                    topicPartitionMap.forEach((topic, tpList) -> offsetManager.addTopic(topic, tpList));
+                    for (Map.Entry<TopicPartition, Long> position: positions.entrySet()) {
+                        offsetManager.savePosition(position.getKey().topic(), position.getKey().partition(), position.getValue());
+                    }
+                }
+                if (offsetManagerCV == null) {
+                    // the initial state for a reset to the initial state is created with the first assignment
+                    saveOffsetManagerToJCP();
+                }
+            }
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Posts an event to the event thread. When the event thread is blocked in `consumer.poll()`, it is woken up,
+     * so that it reacts immediately on the event.
+     * @param event the event
+     */
+    private void postEvent(Event event) {
+        eventQueue.add(event);
+        wakeupPoll();
+    }
 
 	public void sendStartPollingEvent(long timeout) {
         logger.debug("Sending " + EventType.START_POLLING.name() + " event..."); //$NON-NLS-1$ //$NON-NLS-2$
-        eventQueue.add(new Event(EventType.START_POLLING, Long.valueOf(timeout)));
+        postEvent(new Event(EventType.START_POLLING, Long.valueOf(timeout)));
     }
 
     public void sendStopPollingEvent() throws Exception {
         logger.debug("Sending " + EventType.STOP_POLLING + " event..."); //$NON-NLS-1$ //$NON-NLS-2$
         pollingStoppedLatch = new CountDownLatch(1);
-        eventQueue.add(new Event(EventType.STOP_POLLING, null));
+        postEvent(new Event(EventType.STOP_POLLING, null));
         pollingStoppedLatch.await();
     }
 
-    public void sendUpdateTopicAssignmentEvent(TopicPartitionUpdate update) throws Exception {
-    	logger.debug("Sending " + EventType.UPDATE_ASSIGNMENT + " event...");
-    	updateAssignmentLatch = new CountDownLatch(1);
-    	eventQueue.add(new Event(EventType.UPDATE_ASSIGNMENT, update));
-    	updateAssignmentLatch.await();
+    /**
+     * Queues an update of the assigned topic partitions and returns without waiting until the update has been applied.
+     * Updates that are queued before the event thread applies them are merged into one assignment update.
+     * When a partition is added and removed by the merged updates, the last update wins.
+     * Polling starts or continues after the update has been applied.
+     * @param update      the update
+     * @param pollTimeout the timeout for polling after the update
+     */
+    public void sendUpdateTopicAssignmentEvent(TopicPartitionUpdate update, long pollTimeout) {
+        synchronized (pendingUpdateLock) {
+            if (update.getTopicPartitionOffsetMap() != null) {
+                if (update.getAction() == TopicPartitionUpdateAction.ADD) {
+                    pendingRemoves.removeAll(update.getTopicPartitionOffsetMap().keySet());
+                    pendingAdds.putAll(update.getTopicPartitionOffsetMap());
+                } else if (update.getAction() == TopicPartitionUpdateAction.REMOVE) {
+                    pendingAdds.keySet().removeAll(update.getTopicPartitionOffsetMap().keySet());
+                    pendingRemoves.addAll(update.getTopicPartitionOffsetMap().keySet());
+                }
+            }
+            if (updateEventPosted) {
+                // merged into the update that has been posted before
+                return;
+            }
+            updateEventPosted = true;
+        }
+        logger.debug("Sending " + EventType.UPDATE_ASSIGNMENT + " event..."); //$NON-NLS-1$ //$NON-NLS-2$
+        postEvent(new Event(EventType.UPDATE_ASSIGNMENT, null));
+        postEvent(new Event(EventType.START_POLLING, Long.valueOf(pollTimeout)));
     }
     
-    public void sendCheckpointEvent(Checkpoint checkpoint) throws Exception {
-        logger.debug("Sending " + EventType.CHECKPOINT + " event..."); //$NON-NLS-1$ //$NON-NLS-2$
-        checkpointingLatch = new CountDownLatch(1);
-        eventQueue.add(new Event(EventType.CHECKPOINT, checkpoint));
-        checkpointingLatch.await();
-    }
-
     public void sendResetEvent(Checkpoint checkpoint) throws Exception {
         logger.debug("Sending " + EventType.RESET + " event..."); //$NON-NLS-1$ //$NON-NLS-2$
         resettingLatch = new CountDownLatch(1);
-        eventQueue.add(new Event(EventType.RESET, checkpoint));
+        postEvent(new Event(EventType.RESET, checkpoint));
         resettingLatch.await();
     }
 
     public void sendResetToInitEvent() throws Exception {
         logger.debug("Sending " + EventType.RESET_TO_INIT + " event..."); //$NON-NLS-1$ //$NON-NLS-2$
         resettingLatch = new CountDownLatch(1);
-        eventQueue.add(new Event(EventType.RESET_TO_INIT, null));
+        postEvent(new Event(EventType.RESET_TO_INIT, null));
         resettingLatch.await();
     }
 
     public void sendShutdownEvent(long timeout, TimeUnit timeUnit) throws Exception {
+        if (closed) {
+            // the client has been closed after the end of a bounded consumption
+            return;
+        }
         logger.debug("Sending " + EventType.SHUTDOWN + " event..."); //$NON-NLS-1$ //$NON-NLS-2$
         shutdownLatch = new CountDownLatch(1);
-        eventQueue.add(new Event(EventType.SHUTDOWN, null));
+        postEvent(new Event(EventType.SHUTDOWN, null));
         shutdownLatch.await(timeout, timeUnit);
     }
 
+    /**
+     * Returns the next record from the message queue.
+     * Records are handed over from the event thread in whole batches. This method drains a batch
+     * locally and accesses the queue only when the current batch is exhausted.
+     * This method must always be called by the same thread.
+     * @return the next record or `null` if no record has been received within one second, or while the consumer group rebalances.
+     * @throws InterruptedException the thread has been interrupted waiting for a batch
+     */
     public ConsumerRecord<?, ?> getNextRecord() throws InterruptedException {
-         final ConsumerRecord<?,?> record = messageQueue.poll(1, TimeUnit.SECONDS);
-         if (record == null)
-             nPendingMessages.setValue(messageQueue.size());
-         return record;
-    }
-
-    private void refreshFromCluster() {
-        logger.debug("Refreshing from cluster..."); //$NON-NLS-1$
-        List<String> topics = offsetManager.getTopics();
-        Map<TopicPartition, Long> startOffsetMap = new HashMap<TopicPartition, Long>();
-        for (String topic : topics) {
-            List<PartitionInfo> parts = consumer.partitionsFor(topic);
-            parts.forEach(pi -> {
-            	// if the 'partitions' list is empty, retrieve offsets for all topic partitions,
-            	// otherwise only retrieve offsets for the user-specified partitions
-            	if(partitions.isEmpty() || partitions.contains(pi.partition())) {
-                    TopicPartition tp = new TopicPartition(pi.topic(), pi.partition());
-                    long startOffset = offsetManager.getOffset(pi.topic(), pi.partition());
-                    if(startOffset > -1l) {
-                    	startOffsetMap.put(tp, startOffset);
-                    }
-            	}
-            });
+        if (rebalancing) {
+            Thread.sleep(REBALANCE_WAIT_MS);
+            return null;
+        }
+        final int epoch = assignmentEpoch;
+        if (currentBatch != null && currentBatchEpoch != epoch) {
+            currentBatch = withoutLostPartitions(currentBatch, currentBatchEpoch);
+            currentBatchEpoch = epoch;
+        }
+        while (currentBatch == null || !currentBatch.hasNext()) {
+            currentBatch = null;
+            final QueuedBatch batch = messageQueue.poll(1, TimeUnit.SECONDS);
+            if (batch == null) {
+                nPendingMessages.setValue(numPendingMessages.get());
+                return null;
+            }
+            final int nQueued = numQueuedRecords.addAndGet(-batch.records.count());
+            numPendingMessages.addAndGet(-batch.records.count());
+            if (fetchPaused && (overflowBatch != null || getMessageQueueSize() - nQueued >= maxPollRecords)) {
+                // resume watermark reached, or a slot for the overflow batch is free; let the event thread continue immediately
+                wakeupPoll();
+            }
+            currentBatch = batch.epoch == epoch? batch.records.iterator(): withoutLostPartitions(batch.records.iterator(), batch.epoch);
+            currentBatchEpoch = epoch;
         }
+        return currentBatch.next();
+    }
+
+    /**
+     * Removes the records of partitions that have been lost in a rebalance after the given epoch.
+     * @param records the records
+     * @param epoch   the assignment epoch in which the records have been polled or checked last
+     * @return the retained records
+     */
+    private Iterator<? extends ConsumerRecord<?, ?>> withoutLostPartitions(Iterator<? extends ConsumerRecord<?, ?>> records, int epoch) {
+        final List<ConsumerRecord<?, ?>> retained = new ArrayList<>();
+        int nDropped = 0;
+        while (records.hasNext()) {
+            final ConsumerRecord<?, ?> record = records.next();
+            final Integer lostEpoch = lostPartitionEpochs.get(new TopicPartition(record.topic(), record.partition()));
+            if (lostEpoch != null && lostEpoch > epoch) ++nDropped;
+            else retained.add(record);
+        }
+        if (nDropped > 0 && logger.isDebugEnabled()) logger.debug("dropped " + nDropped + " queued records of revoked partitions"); //$NON-NLS-1$ //$NON-NLS-2$
+        return retained.iterator();
+    }
+
+    /**
+     * Returns the next record of the batch that is currently drained without waiting.
+     * This method must be called by the thread that calls {@link #getNextRecord()}.
+     * @return the next record or `null` if the current batch is exhausted.
+     */
+    public ConsumerRecord<?, ?> getNextBufferedRecord() {
+        if (rebalancing || currentBatch == null || !currentBatch.hasNext() || currentBatchEpoch != assignmentEpoch) {
+            return null;
+        }
+        return currentBatch.next();
+    }
+
+    /**
+     * Tests whether the batch, from which the last record has been returned, is exhausted.
+     * Must be called by the thread that calls {@link #getNextRecord()}.
+     * @return `true` if the record returned last is the last record of its poll batch, `false` otherwise.
+     */
+    public boolean isBatchExhausted() {
+        return currentBatch == null || !currentBatch.hasNext();
+    }
+
+    /**
+     * Reports that a record, which has been obtained from {@link #getNextRecord()}, has been processed.
+     * The offset of the record can be committed from now on.
+     * Must be called by the thread that calls {@link #getNextRecord()}.
+     * When a {@link RecordHandler} is used, this method is called internally.
+     * @param record the record
+     */
+    public void recordSubmitted(ConsumerRecord<?, ?> record) {
+        if (commitManager != null) commitManager.recordSubmitted(record.topic(), record.partition(), record.offset());
+    }
+
+    /**
+     * Removes all records from the message queue including the records of the batch that is currently drained.
+     * Must only be called when the thread that calls {@link #getNextRecord()} does not access the queue,
+     * for example during reset of a consistent region.
+     */
+    private void clearMessageQueue() {
+        messageQueue.clear();
+        overflowBatch = null;
+        numPendingMessages.addAndGet(-numQueuedRecords.getAndSet(0));
+        currentBatch = null;
+        nPendingMessages.setValue(numPendingMessages.get());
+    }
+
+    /**
+     * Moves the consumer to the offsets of the restored offset manager.
+     * When the assignment does not change, only the partitions, for which records have been submitted
+     * since the restored state was saved, are seeked, and only their records are removed from the message queue.
+     * Records of the other partitions remain queued, and their fetch positions are kept. Otherwise the consumer is
+     * assigned to the restored partitions, all partitions are seeked, and the message queue is cleared.
+     * Must only be called when the thread that calls {@link #getNextRecord()} does not access the queue.
+     * @param previousOffsetManager the offset manager that has been replaced by the restored one
+     */
+    private void seekToRestoredOffsets(OffsetManager previousOffsetManager) {
+        final Map<TopicPartition, Long> startOffsetMap = new HashMap<TopicPartition, Long>();
+        offsetManager.getOffsetMap().forEach((tp, startOffset) -> {
+            // if the 'partitions' list is empty, restore offsets for all topic partitions,
+            // otherwise only restore offsets for the user-specified partitions
+            if ((partitions.isEmpty() || partitions.contains(tp.partition())) && isOwnPartition(tp) && startOffset > -1l) {
+                startOffsetMap.put(tp, startOffset);
+            }
+        });
         logger.debug("startOffsets=" + startOffsetMap); //$NON-NLS-1$
 
-        // assign the consumer to the partitions and seek to the
-        // last saved offset
-        consumer.assign(startOffsetMap.keySet());
-        for (Entry<TopicPartition, Long> entry : startOffsetMap.entrySet()) {
-            logger.debug("Consumer seeking: TopicPartition=" + entry.getKey() + ", new_offset=" + entry.getValue()); //$NON-NLS-1$ //$NON-NLS-2$
+        final Collection<TopicPartition> seekPartitions;
+        if (consumer.assignment().equals(startOffsetMap.keySet())) {
+            final Set<TopicPartition> changed = new HashSet<>();
+            startOffsetMap.forEach((tp, startOffset) -> {
+                if (previousOffsetManager == null || !previousOffsetManager.hasTopic(tp.topic())
+                        || previousOffsetManager.getOffset(tp.topic(), tp.partition()) != startOffset) {
+                    changed.add(tp);
+                }
+            });
+            logger.debug("assignment unchanged; partitions to seek: " + changed); //$NON-NLS-1$
+            removeFromMessageQueue(changed);
+            seekPartitions = changed;
+        }
+        else {
+            consumer.assign(startOffsetMap.keySet());
+            clearMessageQueue();
+            seekPartitions = startOffsetMap.keySet();
+        }
+        for (TopicPartition tp: seekPartitions) {
+            final long startOffset = startOffsetMap.get(tp);
+            logger.debug("Consumer seeking: TopicPartition=" + tp + ", new_offset=" + startOffset); //$NON-NLS-1$ //$NON-NLS-2$
+            consumer.seek(tp, startOffset);
+        }
+        if (commitManager != null) {
+            // offsets submitted after the restored state was saved must not be committed;
+            // move the committed offsets back to the restored ones
+            commitManager.resetOffsets(startOffsetMap.keySet(), startOffsetMap);
+            commitManager.commitAsync(consumer);
+        }
+    }
 
-            consumer.seek(entry.getKey(), entry.getValue());
+    /**
+     * Removes the records of the given partitions from the message queue including the batch that is currently drained.
+     * Must only be called when the thread that calls {@link #getNextRecord()} does not access the queue.
+     * @param topicPartitions the partitions whose records are removed
+     */
+    private void removeFromMessageQueue(Set<TopicPartition> topicPartitions) {
+        if (topicPartitions.isEmpty()) return;
+        if (currentBatch != null) {
+            final List<ConsumerRecord<?, ?>> remaining = new ArrayList<>();
+            currentBatch.forEachRemaining(record -> {
+                if (!topicPartitions.contains(new TopicPartition(record.topic(), record.partition()))) remaining.add(record);
+            });
+            currentBatch = remaining.iterator();
         }
+        final int[] nRemoved = {0};
+        final UnaryOperator<QueuedBatch> filter = batch -> {
+            if (Collections.disjoint(batch.records.partitions(), topicPartitions)) return batch;
+            final Map<TopicPartition, List<ConsumerRecord<Object, Object>>> retained = new HashMap<>();
+            for (TopicPartition tp: batch.records.partitions()) {
+                @SuppressWarnings("unchecked")
+                final List<ConsumerRecord<Object, Object>> records = (List<ConsumerRecord<Object, Object>>) (List<?>) batch.records.records(tp);
+                if (topicPartitions.contains(tp)) nRemoved[0] += records.size();
+                else retained.put(tp, records);
+            }
+            return retained.isEmpty()? null: new QueuedBatch(new ConsumerRecords<Object, Object>(retained), batch.epoch);
+        };
+        messageQueue.replaceAll(filter);
+        if (overflowBatch != null) overflowBatch = filter.apply(overflowBatch);
+        numQueuedRecords.addAndGet(-nRemoved[0]);
+        numPendingMessages.addAndGet(-nRemoved[0]);
+        nPendingMessages.setValue(numPendingMessages.get());
+        logger.debug("records removed from message queue: " + nRemoved[0]); //$NON-NLS-1$
     }
 
     private void shutdown() {
         logger.debug("Shutdown sequence started..."); //$NON-NLS-1$
         try {
-            consumer.close(CONSUMER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            processing.set(false);
+            close();
         } finally {
             shutdownLatch.countDown();
         }
 
     }
 
+    /**
+     * Commits the offsets, closes the Kafka consumer, and ends the event loop. Must be called by the event thread.
+     */
+    private void close() {
+        if (commitManager != null) {
+            try {
+                commitManager.commitSync(consumer);
+            } catch (Exception e) {
+                logger.warn("Failed to commit offsets on shutdown: " + e.getLocalizedMessage()); //$NON-NLS-1$
+            }
+        }
+        closed = true;
+        consumer.close(CONSUMER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (parallelDeserializer != null) parallelDeserializer.shutdown();
+        if (deadLetterProducer != null) deadLetterProducer.close();
+        processing.set(false);
+    }
+
     public void drain() throws Exception {
         // nothing to drain
     }
 
-    private void checkpoint(Checkpoint checkpoint) throws Exception {
+    /**
+     * Writes the offsets of the submitted records into the checkpoint.
+     * This method is called by the thread that creates the checkpoint, not by the event thread, so that
+     * the event thread continues polling and filling the message queue while the region is checkpointed.
+     * No tuples are submitted while the region is drained, but the event thread can still add partitions
+     * to the offset manager when the assignment changes. The offset manager serializes its state under its lock,
+     * and the event thread makes the changes for an assignment under the same lock, so that the checkpoint
+     * contains either all or none of them.
+     * @param checkpoint the checkpoint
+     * @throws Exception the offsets cannot be written
+     */
+    public void checkpoint(Checkpoint checkpoint) throws Exception {
         logger.debug("Checkpointing seq=" + checkpoint.getSequenceId()); //$NON-NLS-1$
-        try {
-            // offsetManager.savePositionFromCluster();
-            checkpoint.getOutputStream().writeObject(offsetManager);
-            if (logger.isDebugEnabled()) {
-                logger.debug("offsetManager=" + offsetManager); //$NON-NLS-1$
-            }
-        } finally {
-            checkpointingLatch.countDown();
+        final OffsetManager offsetManager = this.offsetManager;
+        checkpoint.getOutputStream().writeObject(offsetCheckpointer.checkpoint(offsetManager, checkpoint.getSequenceId()));
+        if (logger.isDebugEnabled()) {
+            logger.debug("offsetManager=" + offsetManager); //$NON-NLS-1$
         }
-
     }
 
     public OffsetManager getOffsetManager() {
@@ -620,13 +1363,13 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     private void reset(Checkpoint checkpoint) throws Exception {
         logger.debug("Resetting to seq=" + checkpoint.getSequenceId()); //$NON-NLS-1$
         try {
-            offsetManager = (OffsetManager) checkpoint.getInputStream().readObject();
+            final Object state = checkpoint.getInputStream().readObject();
+            final OffsetManager previousOffsetManager = offsetManager;
+            // checkpoints of previous toolkit versions contain the Java serialized OffsetManager
+            offsetManager = state instanceof byte[]? offsetCheckpointer.restore((byte[]) state): (OffsetManager) state;
             offsetManager.setOffsetConsumer(consumer);
 
-            refreshFromCluster();
-            
-            // remove records from queue
-            messageQueue.clear();
+            seekToRestoredOffsets(previousOffsetManager);
         } finally {
             resettingLatch.countDown();
         }
@@ -635,30 +1378,56 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
     private void resetToInitialState() throws Exception {
         logger.debug("Resetting to initial state..."); //$NON-NLS-1$
         try {
+            final OffsetManager previousOffsetManager = offsetManager;
             offsetManager = getDeserializedOffsetManagerCV();
             offsetManager.setOffsetConsumer(consumer);
+            offsetCheckpointer.invalidateBase();
             logger.debug("offsetManager=" + offsetManager); //$NON-NLS-1$
 
-            // refresh from the cluster as we may
-            // have written to the topics
-            refreshFromCluster();
-            
-            // remove records from queue
-            messageQueue.clear();
+            seekToRestoredOffsets(previousOffsetManager);
         } finally {
             resettingLatch.countDown();
         }
     }
 
     private OffsetManager getDeserializedOffsetManagerCV() throws Exception {
-    	return SerializationUtils.deserialize(Base64.getDecoder().decode(offsetManagerCV.sync().getValue()));
+    	// the value is either the compact format or Java serialized by previous toolkit versions
+    	return OffsetManager.fromByteArray(Base64.getDecoder().decode(offsetManagerCV.sync().getValue()));
     }
     
+    /**
+     * A batch of polled records in the message queue together with the assignment epoch in which it has been polled.
+     */
+    private static final class QueuedBatch {
+        final ConsumerRecords<?, ?> records;
+        final int epoch;
+
+        QueuedBatch(ConsumerRecords<?, ?> records, int epoch) {
+            this.records = records;
+            this.epoch = epoch;
+        }
+    }
+
     public static class KafkaConsumerClientBuilder {
     	private OperatorContext operatorContext;
     	private Class<?> keyClass;
     	private Class<?> valueClass;
         private KafkaOperatorProperties kafkaProperties;
+        private WaitStrategy queueWaitStrategy = WaitStrategy.Park;
+        private long commitCount = 0;
+        private long commitPeriodMs = DEFAULT_COMMIT_PERIOD_MS;
+        private RecordHandler recordHandler = null;
+        private int deserializationThreads = 0;
+        private int clientIndex = 0;
+        private int numClients = 1;
+        private AtomicInteger numPendingMessages = null;
+        private int fullCheckpointInterval = 1;
+        private int channel = -1;
+        private int maxChannels = 0;
+        private EndPosition endPosition = null;
+        private long endTime = -1;
+        private Map<TopicPartition, Long> endOffsets = null;
+        private String deadLetterTopic = null;
         
         public KafkaConsumerClientBuilder setKafkaProperties(KafkaOperatorProperties kafkaProperties) {
 			this.kafkaProperties = kafkaProperties;
@@ -680,8 +1449,122 @@ public class KafkaConsumerClient extends AbstractKafkaClient implements Consumer
 			return this;
 		}
         
+        public KafkaConsumerClientBuilder setQueueWaitStrategy(WaitStrategy queueWaitStrategy) {
+            this.queueWaitStrategy = queueWaitStrategy;
+            return this;
+        }
+
+        public KafkaConsumerClientBuilder setCommitCount(long commitCount) {
+            this.commitCount = commitCount;
+            return this;
+        }
+
+        public KafkaConsumerClientBuilder setCommitPeriodMs(long commitPeriodMs) {
+            this.commitPeriodMs = commitPeriodMs;
+            return this;
+        }
+
+        /**
+         * Sets a handler that processes the records on the thread that polls them.
+         * When a handler is set, the records are not placed into the message queue, and {@link KafkaConsumerClient#getNextRecord()} must not be used.
+         * @param recordHandler the record handler
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setRecordHandler(RecordHandler recordHandler) {
+            this.recordHandler = recordHandler;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that deserialize the polled records.
+         * When 0, the records are deserialized by the Kafka consumer in the thread that polls.
+         * @param deserializationThreads the number of threads
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setDeserializationThreads(int deserializationThreads) {
+            this.deserializationThreads = deserializationThreads;
+            return this;
+        }
+
+        /**
+         * Sets the position of the client within the clients of the operator.
+         * When assigned to topic partitions, every client consumes only its share of the partitions.
+         * When subscribed, all clients join the same consumer group.
+         * @param clientIndex the index of this client, starting with 0
+         * @param numClients  the number of clients of the operator
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setClientIndex(int clientIndex, int numClients) {
+            this.clientIndex = clientIndex;
+            this.numClients = numClients;
+            return this;
+        }
+
+        /**
+         * Sets the counter for the queued records, which is shared by the clients of the operator.
+         * @param numPendingMessages the counter
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setPendingMessagesCounter(AtomicInteger numPendingMessages) {
+            this.numPendingMessages = numPendingMessages;
+            return this;
+        }
+
+        /**
+         * Sets the interval of full checkpoints in a consistent region.
+         * The checkpoints between full checkpoints contain only the offsets that changed since the last full checkpoint.
+         * @param fullCheckpointInterval every fullCheckpointInterval-th checkpoint is a full checkpoint; 1 makes every checkpoint a full checkpoint
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setFullCheckpointInterval(int fullCheckpointInterval) {
+            this.fullCheckpointInterval = fullCheckpointInterval;
+            return this;
+        }
+
+        /**
+         * Sets the channel of the operator within a parallel region. When set, the partitions of the topics are distributed
+         * over the clients of all channels, and the clients assign themselves to their partitions instead of subscribing.
+         * @param channel     the channel index, starting with 0
+         * @param maxChannels the number of channels
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setChannel(int channel, int maxChannels) {
+            this.channel = channel;
+            this.maxChannels = maxChannels;
+            return this;
+        }
+
+        /**
+         * Bounds the consumption. The client stops fetching from a partition when the end offset of the partition is reached.
+         * The end offsets are determined when polling starts. The client always assigns itself to the topic partitions.
+         * @param endPosition the end position
+         * @param endTime     the timestamp in milliseconds since epoch; used with {@link EndPosition#Time}
+         * @param endOffsets  the offsets of the first records not consumed; used with {@link EndPosition#Offset}.
+         *                    Partitions without end offset end at their latest offset.
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setEndPosition(EndPosition endPosition, long endTime, Map<TopicPartition, Long> endOffsets) {
+            this.endPosition = endPosition;
+            this.endTime = endTime;
+            this.endOffsets = endOffsets;
+            return this;
+        }
+
+        /**
+         * Sets the topic for malformed records. When set, records whose key or value cannot be deserialized
+         * are forwarded with their raw bytes to this topic and are not handed over for submission.
+         * @param deadLetterTopic the dead-letter topic, or `null` to hand over malformed records
+         * @return this builder
+         */
+        public KafkaConsumerClientBuilder setDeadLetterTopic(String deadLetterTopic) {
+            this.deadLetterTopic = deadLetterTopic;
+            return this;
+        }
+
         public KafkaConsumerClient build() throws Exception {
-        	return new KafkaConsumerClient(operatorContext, keyClass, valueClass, kafkaProperties);
+        	return new KafkaConsumerClient(operatorContext, keyClass, valueClass, kafkaProperties, queueWaitStrategy, commitCount, commitPeriodMs,
+        	        recordHandler, deserializationThreads, clientIndex, numClients, numPendingMessages, fullCheckpointInterval,
+        	        channel, maxChannels, endPosition, endTime, endOffsets, deadLetterTopic);
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.ibm.streams.operator.control.ControlPlaneContext;
+import com.ibm.streams.operator.control.variable.ControlVariableAccessor;
+import com.ibm.streamsx.kafka.clients.OffsetManager;
+
+/**
+ * Creates the checkpoint data of an {@link OffsetManager} and restores an OffsetManager from checkpoint data.
+ *
+ * With a full checkpoint interval of 1, every checkpoint contains the full state in the compact format of {@link OffsetManager#toByteArray()}.
+ * With an interval of N > 1, every N-th checkpoint contains the full state (base), and the checkpoints in between contain only the
+ * offsets that differ from the base (delta). On reset, Streams provides only the checkpoint data of the restored checkpoint.
+ * Therefore the base is also stored in a control variable of the JCP. Two control variables are used alternately, so that the
+ * previous base is still available when the checkpoint that wrote a new base does not complete.
+ *
+ * Checkpoint data formats:
+ * <ul>
+ * <li>first byte 1: full state as created by {@link OffsetManager#toByteArray()}</li>
+ * <li>{@link #BASE_FRAME}, slot, 8 byte base ID, full state</li>
+ * <li>{@link #DELTA_FRAME}, slot, 8 byte base ID, changes created by {@link OffsetManager#toDeltaByteArray(OffsetManager)}</li>
+ * </ul>
+ * The base ID is the sequence ID of the checkpoint that created the base.
+ */
+class OffsetCheckpointer {
+
+    private static final Logger logger = Logger.getLogger(OffsetCheckpointer.class);
+    static final int BASE_FRAME = 0x10;
+    static final int DELTA_FRAME = 0x11;
+    private static final int HEADER_SIZE = 2 + Long.BYTES;
+
+    private final ControlPlaneContext controlPlaneContext;
+    private final String cvNamePrefix;
+    private final int fullCheckpointInterval;
+    /** the control variables for the base in slot 0 and 1, created on first use */
+    private final List<ControlVariableAccessor<String>> baseCVs = new ArrayList<>(Arrays.asList(null, null));
+
+    /** the base state; a copy that is not modified; `null` when the next checkpoint must be a base */
+    private OffsetManager base = null;
+    private long baseId = -1;
+    /** the control variable index of the current base */
+    private int baseSlot = 1;
+    /** number of deltas written since the base */
+    private int nDeltas = 0;
+
+    /**
+     * Constructs a new OffsetCheckpointer.
+     * @param controlPlaneContext    the control plane context to access the JCP
+     * @param cvNamePrefix           the prefix of the names of the control variables for the base
+     * @param fullCheckpointInterval every fullCheckpointInterval-th checkpoint is a full checkpoint
+     * @throws Exception the control variables cannot be created
+     */
+    OffsetCheckpointer(ControlPlaneContext controlPlaneContext, String cvNamePrefix, int fullCheckpointInterval) throws Exception {
+        this.controlPlaneContext = controlPlaneContext;
+        this.cvNamePrefix = cvNamePrefix;
+        this.fullCheckpointInterval = fullCheckpointInterval;
+        if (fullCheckpointInterval > 1) {
+            getBaseCV(0);
+            getBaseCV(1);
+        }
+    }
+
+    private ControlVariableAccessor<String> getBaseCV(int slot) throws Exception {
+        if (baseCVs.get(slot) == null) {
+            baseCVs.set(slot, controlPlaneContext.createStringControlVariable(cvNamePrefix + ".base" + slot, false, "")); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return baseCVs.get(slot);
+    }
+
+    /**
+     * Creates the checkpoint data for the given state.
+     * @param offsetManager the state
+     * @param sequenceId    the sequence ID of the checkpoint
+     * @return the checkpoint data
+     * @throws Exception a new base cannot be stored in the JCP
+     */
+    byte[] checkpoint(OffsetManager offsetManager, long sequenceId) throws Exception {
+        if (fullCheckpointInterval <= 1) {
+            return offsetManager.toByteArray();
+        }
+        if (base == null || nDeltas >= fullCheckpointInterval - 1) {
+            final byte[] full = offsetManager.toByteArray();
+            final int slot = 1 - baseSlot;
+            // store the new base before the checkpoint that refers to it
+            getBaseCV(slot).setValue(Base64.getEncoder().encodeToString(
+                    ByteBuffer.allocate(Long.BYTES + full.length).putLong(sequenceId).put(full).array()));
+            base = OffsetManager.fromByteArray(full);
+            baseId = sequenceId;
+            baseSlot = slot;
+            nDeltas = 0;
+            logger.debug("full offset checkpoint, size=" + full.length + ", slot=" + slot); //$NON-NLS-1$ //$NON-NLS-2$
+            return frame(BASE_FRAME, full);
+        }
+        final byte[] delta = offsetManager.toDeltaByteArray(base);
+        ++nDeltas;
+        logger.debug("delta offset checkpoint, size=" + delta.length + ", baseId=" + baseId); //$NON-NLS-1$ //$NON-NLS-2$
+        return frame(DELTA_FRAME, delta);
+    }
+
+    private byte[] frame(int frameType, byte[] payload) {
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .put((byte) frameType).put((byte) baseSlot).putLong(baseId).put(payload).array();
+    }
+
+    /**
+     * Restores the state from checkpoint data.
+     * @param data the checkpoint data
+     * @return a new OffsetManager without offset consumer
+     * @throws Exception the data are malformed, or the base of a delta is not available
+     */
+    OffsetManager restore(byte[] data) throws Exception {
+        final int frameType = data.length > 0? data[0] & 0xFF: -1;
+        if (frameType != BASE_FRAME && frameType != DELTA_FRAME) {
+            // full state; the next checkpoint writes a new base
+            base = null;
+            return OffsetManager.fromByteArray(data);
+        }
+        if (data.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("truncated offset checkpoint"); //$NON-NLS-1$
+        }
+        final ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.get();
+        final int slot = buf.get() & 1;
+        final long id = buf.getLong();
+        final byte[] payload = Arrays.copyOfRange(data, HEADER_SIZE, data.length);
+        if (frameType == BASE_FRAME) {
+            base = OffsetManager.fromByteArray(payload);
+            baseId = id;
+            baseSlot = slot;
+            nDeltas = 0;
+            return OffsetManager.fromByteArray(payload);
+        }
+        if (base == null || baseId != id || baseSlot != slot) {
+            // the base is not in memory, for example after a PE restart
+            base = readBase(slot, id);
+            baseId = id;
+            baseSlot = slot;
+            nDeltas = 0;
+        }
+        return OffsetManager.fromDeltaByteArray(base, payload);
+    }
+
+    private OffsetManager readBase(int slot, long id) throws Exception {
+        final byte[] value = Base64.getDecoder().decode(getBaseCV(slot).sync().getValue());
+        if (value.length < Long.BYTES || ByteBuffer.wrap(value).getLong() != id) {
+            throw new IllegalStateException("base of offset checkpoint not found in JCP: id=" + id + ", slot=" + slot); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        logger.debug("read base of offset checkpoint from JCP, id=" + id + ", slot=" + slot); //$NON-NLS-1$ //$NON-NLS-2$
+        return OffsetManager.fromByteArray(Arrays.copyOfRange(value, Long.BYTES, value.length));
+    }
+
+    /**
+     * Discards the base, so that the next checkpoint is a full checkpoint.
+     */
+    void invalidateBase() {
+        base = null;
+    }
+}
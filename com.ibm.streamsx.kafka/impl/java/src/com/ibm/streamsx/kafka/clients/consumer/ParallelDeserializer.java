@@ -0,0 +1,191 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.utils.Utils;
+import org.apache.log4j.Logger;
+
+/**
+ * Deserializes batches of raw records on a pool of worker threads.
+ *
+ * The records of a batch are split into chunks of consecutive records of the same partition.
+ * The chunks are deserialized concurrently and re-assembled in their original order, so that the
+ * records of each partition keep their offset order. Every worker thread uses its own instances
+ * of the key and value deserializers, so that the deserializers need not be thread-safe.
+ * Without worker threads, the records are deserialized by the calling thread.
+ *
+ * When a handler for malformed records is given, records whose key or value cannot be deserialized are passed
+ * as raw records to the handler and removed from the batch. A record is malformed when a deserializer throws
+ * an exception, or returns `null` for data that is not `null`.
+ */
+class ParallelDeserializer {
+
+    private static final Logger logger = Logger.getLogger(ParallelDeserializer.class);
+    /** chunks are not made smaller than this number of records */
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private final int nThreads;
+    private final ExecutorService executor;
+    private final ThreadLocal<Deserializer<?>> keyDeserializer;
+    private final ThreadLocal<Deserializer<?>> valueDeserializer;
+    private final Consumer<ConsumerRecord<byte[], byte[]>> malformedRecordHandler;
+
+    /**
+     * Constructs a new ParallelDeserializer.
+     * @param kafkaProperties the consumer properties with the configured key and value deserializers
+     * @param keyDeserializerConfig   the key deserializer, either a class name or a class
+     * @param valueDeserializerConfig the value deserializer, either a class name or a class
+     * @param nThreads        the number of worker threads; 0 deserializes in the calling thread
+     * @param threadFactory   the factory for the worker threads
+     * @param malformedRecordHandler the handler for malformed records, or `null` to keep malformed records in the batch.
+     *                        The handler is called by the worker threads.
+     */
+    ParallelDeserializer(Properties kafkaProperties, Object keyDeserializerConfig, Object valueDeserializerConfig,
+            int nThreads, ThreadFactory threadFactory, Consumer<ConsumerRecord<byte[], byte[]>> malformedRecordHandler) {
+        this.nThreads = nThreads;
+        this.malformedRecordHandler = malformedRecordHandler;
+        final Map<String, Object> configs = new HashMap<>();
+        kafkaProperties.forEach((k, v) -> configs.put(k.toString(), v));
+        this.keyDeserializer = ThreadLocal.withInitial(() -> createDeserializer(keyDeserializerConfig, configs, true));
+        this.valueDeserializer = ThreadLocal.withInitial(() -> createDeserializer(valueDeserializerConfig, configs, false));
+        if (nThreads > 0) {
+            this.executor = Executors.newFixedThreadPool(nThreads, threadFactory);
+            logger.info("deserializing records with " + nThreads + " threads"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        else {
+            this.executor = null;
+        }
+    }
+
+    private static Deserializer<?> createDeserializer(Object deserializerConfig, Map<String, Object> configs, boolean isKey) {
+        final Deserializer<?> deserializer;
+        try {
+            if (deserializerConfig instanceof Class) {
+                deserializer = (Deserializer<?>) Utils.newInstance((Class<?>) deserializerConfig);
+            }
+            else {
+                deserializer = Utils.newInstance(deserializerConfig.toString(), Deserializer.class);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new KafkaException(e);
+        }
+        deserializer.configure(configs, isKey);
+        return deserializer;
+    }
+
+    /**
+     * Deserializes a batch of raw records. Blocks until all records are deserialized.
+     * Exceptions thrown by the deserializers are re-thrown.
+     * @param rawRecords the raw records
+     * @return the deserialized records in the same order
+     * @throws InterruptedException the calling thread has been interrupted while waiting for the workers
+     */
+    ConsumerRecords<?, ?> deserialize(ConsumerRecords<byte[], byte[]> rawRecords) throws InterruptedException {
+        if (executor == null) {
+            final Map<TopicPartition, List<ConsumerRecord<Object, Object>>> records = new LinkedHashMap<>();
+            for (TopicPartition tp: rawRecords.partitions()) {
+                final List<ConsumerRecord<Object, Object>> partitionRecords = deserializeChunk(rawRecords.records(tp));
+                if (!partitionRecords.isEmpty()) records.put(tp, partitionRecords);
+            }
+            return new ConsumerRecords<Object, Object>(records);
+        }
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, (rawRecords.count() + nThreads - 1) / nThreads);
+        final Map<TopicPartition, List<Future<List<ConsumerRecord<Object, Object>>>>> futures = new LinkedHashMap<>();
+        for (TopicPartition tp: rawRecords.partitions()) {
+            final List<ConsumerRecord<byte[], byte[]>> partitionRecords = rawRecords.records(tp);
+            final List<Future<List<ConsumerRecord<Object, Object>>>> partitionFutures = new ArrayList<>();
+            for (int from = 0; from < partitionRecords.size(); from += chunkSize) {
+                final List<ConsumerRecord<byte[], byte[]>> chunk = partitionRecords.subList(from, Math.min(from + chunkSize, partitionRecords.size()));
+                partitionFutures.add(executor.submit(new Callable<List<ConsumerRecord<Object, Object>>>() {
+                    @Override
+                    public List<ConsumerRecord<Object, Object>> call() {
+                        return deserializeChunk(chunk);
+                    }
+                }));
+            }
+            futures.put(tp, partitionFutures);
+        }
+        final Map<TopicPartition, List<ConsumerRecord<Object, Object>>> records = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<TopicPartition, List<Future<List<ConsumerRecord<Object, Object>>>>> entry: futures.entrySet()) {
+                final List<Future<List<ConsumerRecord<Object, Object>>>> partitionFutures = entry.getValue();
+                final List<ConsumerRecord<Object, Object>> partitionRecords;
+                if (partitionFutures.size() == 1) {
+                    partitionRecords = partitionFutures.get(0).get();
+                }
+                else {
+                    partitionRecords = new ArrayList<>();
+                    for (Future<List<ConsumerRecord<Object, Object>>> f: partitionFutures) {
+                        partitionRecords.addAll(f.get());
+                    }
+                }
+                // partitions with only malformed records are left out
+                if (!partitionRecords.isEmpty()) records.put(entry.getKey(), partitionRecords);
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new KafkaException(cause);
+        } catch (InterruptedException e) {
+            futures.values().forEach(list -> list.forEach(f -> f.cancel(true)));
+            throw e;
+        }
+        return new ConsumerRecords<Object, Object>(records);
+    }
+
+    @SuppressWarnings({"unchecked", "deprecation"})
+    private List<ConsumerRecord<Object, Object>> deserializeChunk(List<ConsumerRecord<byte[], byte[]>> chunk) {
+        final Deserializer<Object> keyDeser = (Deserializer<Object>) keyDeserializer.get();
+        final Deserializer<Object> valueDeser = (Deserializer<Object>) valueDeserializer.get();
+        final List<ConsumerRecord<Object, Object>> result = new ArrayList<>(chunk.size());
+        for (ConsumerRecord<byte[], byte[]> raw: chunk) {
+            final Object key;
+            final Object value;
+            if (malformedRecordHandler == null) {
+                key = raw.key() == null? null: keyDeser.deserialize(raw.topic(), raw.key());
+                value = raw.value() == null? null: valueDeser.deserialize(raw.topic(), raw.value());
+            }
+            else {
+                try {
+                    key = raw.key() == null? null: keyDeser.deserialize(raw.topic(), raw.key());
+                    value = raw.value() == null? null: valueDeser.deserialize(raw.topic(), raw.value());
+                } catch (RuntimeException e) {
+                    malformedRecordHandler.accept(raw);
+                    continue;
+                }
+                if ((key == null && raw.key() != null) || (value == null && raw.value() != null)) {
+                    malformedRecordHandler.accept(raw);
+                    continue;
+                }
+            }
+            result.add(new ConsumerRecord<Object, Object>(raw.topic(), raw.partition(), raw.offset(), raw.timestamp(), raw.timestampType(),
+                    raw.checksum(), raw.serializedKeySize(), raw.serializedValueSize(), key, value, raw.headers()));
+        }
+        return result;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    void shutdown() {
+        if (executor != null) executor.shutdownNow();
+    }
+}
@@ -0,0 +1,67 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * The share of the partitions of the topics that a consumer client consumes.
+ *
+ * The partitions are distributed over the clients of an operator, or over the clients of all channels of a parallel region
+ * when assigning by channel. Then the clients are numbered channel by channel, so that the share index of a client
+ * is `channel * numClients + clientIndex`, and there are `maxChannels * numClients` shares.
+ * The partitions of a topic are distributed round-robin over the shares.
+ */
+final class PartitionShare {
+
+    private final int index;
+    private final int count;
+
+    private PartitionShare(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Creates the share of a client.
+     * @param clientIndex the index of the client within the clients of the operator
+     * @param numClients  the number of clients of the operator
+     * @param channel     the channel of the operator, or a negative value when the partitions are not assigned by channel
+     * @param maxChannels the number of channels of the parallel region
+     * @return the share of the client
+     */
+    static PartitionShare of(int clientIndex, int numClients, int channel, int maxChannels) {
+        if (channel >= 0 && maxChannels > 0) {
+            return new PartitionShare(channel * numClients + clientIndex, maxChannels * numClients);
+        }
+        return new PartitionShare(clientIndex, numClients);
+    }
+
+    /**
+     * Returns the index of the share.
+     * @return the index, starting with 0
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the number of shares.
+     * @return the number of shares
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Tests whether a partition belongs to the share.
+     * @param tp the topic partition
+     * @return `true`, if the partition belongs to the share, `false` otherwise. With only one share, every partition belongs to it.
+     */
+    boolean contains(TopicPartition tp) {
+        return count <= 1 || Math.floorMod(tp.topic().hashCode() + tp.partition(), count) == index;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionShare [index=" + index + ", count=" + count + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+}
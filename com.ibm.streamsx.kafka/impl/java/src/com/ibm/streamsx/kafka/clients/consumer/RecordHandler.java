@@ -0,0 +1,45 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * Processes records directly on the thread that polls them from Kafka, bypassing the message queue.
+ */
+@FunctionalInterface
+public interface RecordHandler {
+
+    /**
+     * Processes a record. This method is invoked by the event thread of the {@link KafkaConsumerClient}.
+     * @param record the record
+     * @throws Exception processing the record failed. The exception is propagated from the event thread.
+     */
+    void handle(ConsumerRecord<?, ?> record) throws Exception;
+
+    /**
+     * Tests whether the record can be handled now. This method is invoked by the event thread of the {@link KafkaConsumerClient}
+     * before the record is handled. When the returned time is greater than 0, the client stops handling the batch,
+     * rewinds the fetch positions to the record and the following records of the batch, and pauses fetching for this time,
+     * so that the thread keeps polling and does not block.
+     * @param record the record
+     * @return the time in nanoseconds after which the record can be handled, 0 to handle the record now
+     */
+    default long getDelayNanos(ConsumerRecord<?, ?> record) {
+        return 0;
+    }
+
+    /**
+     * Notifies that all records of a poll batch have been handled.
+     * This method is invoked by the event thread of the {@link KafkaConsumerClient}.
+     * @throws Exception the notification failed. The exception is propagated from the event thread.
+     */
+    default void endOfBatch() throws Exception {
+    }
+
+    /**
+     * Notifies that all records up to the end position have been handled when the consumption is bounded.
+     * This method is invoked by the event thread of the {@link KafkaConsumerClient} before the client is closed.
+     * @throws Exception the notification failed. The exception is propagated from the event thread.
+     */
+    default void endOfData() throws Exception {
+    }
+}
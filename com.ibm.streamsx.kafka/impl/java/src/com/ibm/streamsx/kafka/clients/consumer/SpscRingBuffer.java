@@ -0,0 +1,194 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
+
+/**
+ * A preallocated, lock-free ring buffer for exactly one producer thread and exactly one consumer thread.
+ * The producer must only call {@link #offer(Object)} and {@link #remainingCapacity()},
+ * the consumer must only call {@link #poll()} and {@link #poll(long, TimeUnit)}.
+ * When the buffer is empty, the consumer waits using the {@link WaitStrategy} given at construction.
+ *
+ * @param <E> the element type
+ */
+public class SpscRingBuffer<E> {
+
+    /** upper bound for a single park, so that a missed unpark delays the consumer at most by this time */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object[] buffer;
+    private final int mask;
+    private final int capacity;
+    private final WaitStrategy waitStrategy;
+
+    /** sequence of the next slot to read; written only by the consumer */
+    private final AtomicLong head = new AtomicLong(0);
+    /** sequence of the next slot to write; written only by the producer */
+    private final AtomicLong tail = new AtomicLong(0);
+    /** producer's cached copy of head, avoids reading the volatile head on every offer */
+    private long producerHeadCache = 0;
+    /** consumer's cached copy of tail, avoids reading the volatile tail on every poll */
+    private long consumerTailCache = 0;
+    /** the consumer thread parked in {@link #poll(long, TimeUnit)} or `null` */
+    private volatile Thread parkedConsumer = null;
+
+    /**
+     * Constructs a new ring buffer.
+     * @param minCapacity  the minimum capacity. The capacity is rounded up to the next power of two.
+     * @param waitStrategy the strategy how the consumer waits for elements
+     */
+    public SpscRingBuffer(int minCapacity, WaitStrategy waitStrategy) {
+        if (minCapacity <= 0) throw new IllegalArgumentException("minCapacity must be > 0: " + minCapacity); //$NON-NLS-1$
+        int cap = Integer.highestOneBit(minCapacity);
+        if (cap < minCapacity) cap <<= 1;
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.buffer = new Object[cap];
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Inserts an element at the tail of the buffer. Called by the producer thread.
+     * @param e the element, must not be `null`
+     * @return `true` if the element has been inserted, `false` if the buffer is full
+     */
+    public boolean offer(E e) {
+        final long t = tail.get();
+        if (t - producerHeadCache >= capacity) {
+            producerHeadCache = head.get();
+            if (t - producerHeadCache >= capacity) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = e;
+        tail.set(t + 1);
+        if (waitStrategy == WaitStrategy.Park) {
+            final Thread parked = parkedConsumer;
+            if (parked != null) LockSupport.unpark(parked);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the element at the head of the buffer without waiting. Called by the consumer thread.
+     * @return the element or `null` if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final long h = head.get();
+        if (h >= consumerTailCache) {
+            consumerTailCache = tail.get();
+            if (h >= consumerTailCache) {
+                return null;
+            }
+        }
+        final int index = (int) h & mask;
+        final E e = (E) buffer[index];
+        buffer[index] = null;
+        head.set(h + 1);
+        return e;
+    }
+
+    /**
+     * Removes the element at the head of the buffer, waiting up to the specified time if necessary
+     * for an element to become available. Called by the consumer thread.
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout argument
+     * @return the element or `null` if the specified waiting time elapsed before an element is available
+     * @throws InterruptedException the thread has been interrupted while waiting
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null) return e;
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while ((e = poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return null;
+            switch (waitStrategy) {
+            case BusySpin:
+                break;
+            case Yield:
+                Thread.yield();
+                break;
+            case Park:
+            default:
+                parkedConsumer = Thread.currentThread();
+                // re-check after publishing the parked thread; the producer may have inserted in between
+                if ((e = poll()) != null) {
+                    parkedConsumer = null;
+                    return e;
+                }
+                LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+                parkedConsumer = null;
+                break;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Returns the number of elements that can be inserted before the buffer is full.
+     * The value is exact for the producer thread and a lower bound for other threads.
+     * @return the remaining capacity
+     */
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    /**
+     * Returns the number of elements in the buffer.
+     * @return the number of elements
+     */
+    public int size() {
+        final long h = head.get();
+        return (int) (tail.get() - h);
+    }
+
+    /**
+     * Returns `true` if the buffer contains no elements.
+     * @return `true` if the buffer is empty, `false` otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Replaces every element by the result of the mapper. Elements, for which the mapper returns `null`, are removed.
+     * The order of the remaining elements is kept.
+     * This method must only be called by the producer thread while the consumer thread does not access the buffer.
+     * @param mapper the function that maps an element to its replacement or `null`
+     */
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> mapper) {
+        final long t = tail.get();
+        final long h = head.get();
+        // compact towards the tail, so that the tail, which the consumer may have cached, is not moved
+        long w = t;
+        for (long r = t - 1; r >= h; --r) {
+            final int i = (int) r & mask;
+            final E e = mapper.apply((E) buffer[i]);
+            buffer[i] = null;
+            if (e != null) {
+                buffer[(int) --w & mask] = e;
+            }
+        }
+        head.set(w);
+        producerHeadCache = w;
+    }
+
+    /**
+     * Removes all elements from the buffer.
+     * This method must only be called by the producer thread while the consumer thread does not access the buffer.
+     */
+    public void clear() {
+        final long t = tail.get();
+        for (long h = head.get(); h < t; ++h) {
+            buffer[(int) h & mask] = null;
+        }
+        head.set(t);
+        producerHeadCache = t;
+    }
+}
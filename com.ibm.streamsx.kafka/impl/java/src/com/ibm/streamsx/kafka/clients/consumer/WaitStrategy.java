@@ -0,0 +1,8 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+/**
+ * Strategy how the thread that takes records from the message queue waits when the queue is empty.
+ */
+public enum WaitStrategy {
+    BusySpin, Yield, Park;
+}
@@ -1,13 +1,17 @@
 package com.ibm.streamsx.kafka.operators;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
@@ -24,23 +28,30 @@ import com.ibm.streams.operator.Attribute;
 import com.ibm.streams.operator.OperatorContext;
 import com.ibm.streams.operator.OperatorContext.ContextCheck;
 import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamingData.Punctuation;
 import com.ibm.streams.operator.StreamSchema;
 import com.ibm.streams.operator.StreamingInput;
 import com.ibm.streams.operator.StreamingOutput;
 import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
 import com.ibm.streams.operator.Type.MetaType;
 import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.meta.CollectionType;
+import com.ibm.streams.operator.meta.EnumType;
+import com.ibm.streams.operator.meta.TupleType;
 import com.ibm.streams.operator.metrics.Metric;
 import com.ibm.streams.operator.model.CustomMetric;
 import com.ibm.streams.operator.model.Parameter;
 import com.ibm.streams.operator.state.Checkpoint;
 import com.ibm.streams.operator.state.ConsistentRegionContext;
-import com.ibm.streams.operator.types.RString;
-import com.ibm.streams.operator.types.ValueFactory;
+import com.ibm.streamsx.kafka.LogThrottle;
+import com.ibm.streamsx.kafka.clients.consumer.EndPosition;
 import com.ibm.streamsx.kafka.clients.consumer.KafkaConsumerClient;
+import com.ibm.streamsx.kafka.clients.consumer.RecordHandler;
 import com.ibm.streamsx.kafka.clients.consumer.StartPosition;
 import com.ibm.streamsx.kafka.clients.consumer.TopicPartitionUpdate;
 import com.ibm.streamsx.kafka.clients.consumer.TopicPartitionUpdateAction;
+import com.ibm.streamsx.kafka.clients.consumer.WaitStrategy;
 import com.ibm.streamsx.kafka.i18n.Messages;
 import com.ibm.streamsx.kafka.properties.KafkaOperatorProperties;
 
@@ -51,6 +62,7 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
     private static final Long SHUTDOWN_TIMEOUT = 5l;
     private static final TimeUnit SHUTDOWN_TIMEOUT_TIMEUNIT = TimeUnit.SECONDS;
     private static final StartPosition DEFAULT_START_POSITION = StartPosition.Default;
+    private static final WaitStrategy DEFAULT_QUEUE_WAIT_STRATEGY = WaitStrategy.Park;
     private static final String DEFAULT_OUTPUT_MESSAGE_ATTR_NAME = "message"; //$NON-NLS-1$
     private static final String DEFAULT_OUTPUT_KEY_ATTR_NAME = "key"; //$NON-NLS-1$
     private static final String DEFAULT_OUTPUT_TOPIC_ATTR_NAME = "topic"; //$NON-NLS-1$
@@ -68,12 +80,63 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
     private static final String START_POSITION_PARAM = "startPosition"; //$NON-NLS-1$
     private static final String START_TIME_PARAM = "startTime"; //$NON-NLS-1$
     private static final String TRIGGER_COUNT_PARAM = "triggerCount"; //$NON-NLS-1$
+    private static final String TRIGGER_PERIOD_PARAM = "triggerPeriod"; //$NON-NLS-1$
+    private static final String TRIGGER_BYTES_PARAM = "triggerBytes"; //$NON-NLS-1$
     private static final String START_OFFSET_PARAM = "startOffset"; //$NON-NLS-1$
+    private static final String END_POSITION_PARAM = "endPosition"; //$NON-NLS-1$
+    private static final String END_TIME_PARAM = "endTime"; //$NON-NLS-1$
+    private static final String END_OFFSET_PARAM = "endOffset"; //$NON-NLS-1$
+    private static final String QUEUE_WAIT_STRATEGY_PARAM = "queueWaitStrategy"; //$NON-NLS-1$
+    private static final String COMMIT_COUNT_PARAM = "commitCount"; //$NON-NLS-1$
+    private static final String COMMIT_PERIOD_PARAM = "commitPeriod"; //$NON-NLS-1$
+    private static final String PERMIT_BATCH_SIZE_PARAM = "permitBatchSize"; //$NON-NLS-1$
+    private static final String DIRECT_SUBMISSION_PARAM = "directSubmission"; //$NON-NLS-1$
+    private static final String DESERIALIZATION_THREADS_PARAM = "deserializationThreads"; //$NON-NLS-1$
+    private static final String DEAD_LETTER_TOPIC_PARAM = "deadLetterTopic"; //$NON-NLS-1$
+    private static final String CONSUMER_THREADS_PARAM = "consumerThreads"; //$NON-NLS-1$
+    private static final String FULL_CHECKPOINT_INTERVAL_PARAM = "fullCheckpointInterval"; //$NON-NLS-1$
+    private static final String ASSIGN_BY_CHANNEL_PARAM = "assignByChannel"; //$NON-NLS-1$
+    private static final String MAX_RECORDS_PER_SECOND_PARAM = "maxRecordsPerSecond"; //$NON-NLS-1$
+    private static final String MAX_BYTES_PER_SECOND_PARAM = "maxBytesPerSecond"; //$NON-NLS-1$
+    private static final String PUNCTUATION_MODE_PARAM = "punctuationMode"; //$NON-NLS-1$
+    private static final String PUNCTUATION_COUNT_PARAM = "punctuationCount"; //$NON-NLS-1$
+    private static final String PUNCTUATION_PERIOD_PARAM = "punctuationPeriod"; //$NON-NLS-1$
+    /** action of control port tuples that change the rate limits */
+    private static final String THROTTLE_ACTION = "THROTTLE"; //$NON-NLS-1$
+    /** attribute names of the structured control port schema */
+    private static final String CONTROL_ACTION_ATTR_NAME = "action"; //$NON-NLS-1$
+    private static final String CONTROL_TOPIC_PARTITION_OFFSETS_ATTR_NAME = "topicPartitionOffsets"; //$NON-NLS-1$
+    private static final String CONTROL_TOPIC_ATTR_NAME = "topic"; //$NON-NLS-1$
+    private static final String CONTROL_PARTITION_ATTR_NAME = "partition"; //$NON-NLS-1$
+    private static final String CONTROL_OFFSET_ATTR_NAME = "offset"; //$NON-NLS-1$
+    /** maximum time a consistent region permit is held for submitting a batch of tuples */
+    private static final long PERMIT_BATCH_TIME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
     
-    private Thread processThread;
-    private KafkaConsumerClient consumer;
+    private List<Thread> processThreads;
+    /** the consumer clients; they consume disjoint sets of partitions */
+    private List<KafkaConsumerClient> consumers;
+    /** number of submitted tuples since last operator driven drain, counted over all submitting threads */
+    private final AtomicInteger nTuplesForOpDrivenCR = new AtomicInteger(0);
+    /** number of consumed key and value bytes since last operator driven drain, counted over all submitting threads */
+    private final AtomicLong nBytesForOpDrivenCR = new AtomicLong(0);
+    /** time of the last operator driven drain in nanoseconds */
+    private volatile long lastOpDrivenCRNanos;
+    /** set by the submitting thread that makes the region consistent, so that only one thread triggers */
+    private final AtomicBoolean opDrivenCRTriggered = new AtomicBoolean(false);
     private AtomicBoolean shutdown;
+    /** number of consumer clients that have not reached the end position of a bounded consumption */
+    private final AtomicInteger nUnfinishedConsumers = new AtomicInteger(0);
+    /** limits the rate of submitted tuples; shared by all submitting threads */
+    private final RateLimiter rateLimiter = new RateLimiter();
+    /** number of submitted tuples for window punctuation; counted over all submitting threads */
+    private final AtomicLong nTuplesForPunctuation = new AtomicLong(0);
+    /** the periodic task that submits window punctuations in {@link PunctuationMode#Time} mode */
+    private ScheduledFuture<?> punctuationTask = null;
     private Gson gson;
+    /** `true` when the control port has the structured schema instead of a JSON string attribute */
+    private boolean structuredControlPort = false;
+    /** `true` when the action attribute of the structured control port is an enum, `false` when it is an rstring */
+    private boolean enumControlAction = false;
 
     /* Parameters */
     private String outputKeyAttrName = DEFAULT_OUTPUT_KEY_ATTR_NAME;
@@ -86,20 +149,38 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
     private List<Integer> partitions;
     private List<Long> startOffsets;
     private StartPosition startPosition = DEFAULT_START_POSITION;
-    private int triggerCount;
+    private int triggerCount = 0;
+    private double triggerPeriod = 0.0;
+    private long triggerBytes = 0;
     private String groupId = null;
     private Long startTime;
+    private EndPosition endPosition = null;
+    private long endTime = -1;
+    private List<Long> endOffsets;
+    private WaitStrategy queueWaitStrategy = DEFAULT_QUEUE_WAIT_STRATEGY;
+    private int commitCount = 0;
+    private int permitBatchSize = 1;
+    private boolean directSubmission = false;
+    private int deserializationThreads = 0;
+    private String deadLetterTopic = null;
+    private int consumerThreads = 1;
+    private int fullCheckpointInterval = 1;
+    private boolean assignByChannel = false;
+    private double maxRecordsPerSecond = 0.0;
+    private double maxBytesPerSecond = 0.0;
+    private PunctuationMode punctuationMode = PunctuationMode.None;
+    private int punctuationCount = 0;
+    private double punctuationPeriod = 0.0;
+    private double commitPeriod = KafkaConsumerClient.DEFAULT_COMMIT_PERIOD_MS / 1000.0;
 
     private Long consumerPollTimeout = DEFAULT_CONSUMER_TIMEOUT;
     private CountDownLatch resettingLatch;
-    private boolean hasOutputTopic;
     private boolean hasOutputKey;
-	private boolean hasOutputOffset;
-	private boolean hasOutputPartition;
-	private boolean hasOutputTimetamp;
+    private RecordTupleConverter tupleConverter;
 
     // The number of messages in which the value was malformed and could not be deserialized
     private Metric nMalformedMessages;
+    private final LogThrottle malformedLogThrottle = new LogThrottle(10, TimeUnit.SECONDS);
 
     // Initialize the metrics
     @CustomMetric (kind = Metric.Kind.COUNTER, name = "nDroppedMalformedMessages", description = "Number of dropped malformed messages")
@@ -219,6 +300,59 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         this.startPosition = startPosition;
     }
 
+    @Parameter(optional = true, name=END_POSITION_PARAM,
+            description="Bounds the consumption. When specified, the operator stops consuming a partition when the end "
+                    + "position of the partition is reached. When all partitions are consumed up to their end position, "
+                    + "the operator submits a final punctuation and closes its Kafka consumers. "
+                    + "Valid options include: `End`, `Time`, and `Offset`.\\n"
+                    + "* `End`: The consumer stops at the end of the partitions as it is when the consumption starts. "
+                    + "Messages that are inserted later are not consumed."
+                    + "\\n"
+                    + "* `Time`: The consumer stops before the earliest offset whose timestamp is greater than or equal to "
+                    + "the timestamp given as **endTime** parameter. When there is no such offset, the consumer stops at "
+                    + "the end of the partition as it is when the consumption starts."
+                    + "\\n"
+                    + "* `Offset`: The consumer stops before the offsets given by the **endOffset** parameter. "
+                    + "The limitation for using `Offset` as the end position is that **only one single topic** can be specified "
+                    + "via the **topic** parameter.\\n"
+                    + "\\n"
+                    + "With an end position, the operator always assigns itself to the topic partitions, also when no partitions "
+                    + "are specified. The partitions, which exist when the operator starts, are consumed. "
+                    + "This parameter cannot be used when the operator is part of a consistent region. "
+                    + "It is ignored when the operator has an input port. "
+                    + "If this parameter is not specified, the operator consumes without end.")
+    public void setEndPosition(EndPosition endPosition) {
+        this.endPosition = endPosition;
+    }
+
+    @Parameter(optional = true, name=END_TIME_PARAM,
+            description="This parameter is only used when the **endPosition** parameter is set to `Time`. "
+                    + "Then the operator stops consuming a partition before the earliest offset whose timestamp is greater "
+                    + "than or equal to the timestamp specified by this parameter. The timestamp "
+                    + "must be given as an 'int64' type in milliseconds since Unix epoch.")
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    @Parameter(optional = true, name=END_OFFSET_PARAM,
+            description="This parameter indicates the offsets at which the operator stops consuming. "
+                    + "The message at the end offset is not consumed. In order for this parameter's values to take affect, "
+                    + "the **endPosition** parameter must be set to `Offset`. Furthermore, the specific partition(s) that the "
+                    + "operator should consume from must be specified via the **partition** parameter.\\n"
+                    + "\\n"
+                    + "There is a one-to-one mapping between the position of the partition from the **partition** parameter "
+                    + "and the position of the offset from the **endOffset** parameter. For example, if the **partition** "
+                    + "parameter has the values `0, 1`, and the **endOffset** parameter has the values `1000l, 2000l`, then the "
+                    + "operator consumes messages from partition 0 up to offset 999 and from partition 1 up to offset 1999. "
+                    + "When an end offset is greater than the offset of the latest message, the operator waits for new "
+                    + "messages until the end offset is reached.\\n"
+                    + "\\n"
+                    + "A limitation with using this parameter is that **only one single topic** can be specified "
+                    + "via the **topic** parameter. ")
+    public void setEndOffsets(long[] endOffsets) {
+        this.endOffsets = Longs.asList(endOffsets);
+    }
+
     @Parameter(optional = true, name=PARTITION_PARAM,
     		description="Specifies the partitions that the consumer should be "
     				+ "assigned to for each of the topics specified. When you specify "
@@ -278,12 +412,317 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
     @Parameter(optional = true, name=TRIGGER_COUNT_PARAM, 
             description="This parameter specifies the number of tuples that will be "
                     + "submitted to the output port before triggering a consistent region. "
+                    + "It can be combined with the **triggerPeriod** and **triggerBytes** parameters; "
+                    + "the region is triggered by the condition that is met first. "
                     + "This parameter is only used if the operator is the start of an "
                     + "*operator driven* consistent region and is ignored otherwise.")
     public void setTriggerCount(int triggerCount) {
         this.triggerCount = triggerCount;
     }
 
+    @Parameter(optional = true, name=TRIGGER_PERIOD_PARAM,
+            description="Specifies the period in seconds after which a consistent region is triggered "
+                    + "when tuples have been submitted since the region has last been made consistent. "
+                    + "This bounds the number of messages that are replayed after a failure when the message rate is low. "
+                    + "It can be combined with the **triggerCount** and **triggerBytes** parameters; "
+                    + "the region is triggered by the condition that is met first. "
+                    + "This parameter is only used if the operator is the start of an "
+                    + "*operator driven* consistent region and is ignored otherwise.")
+    public void setTriggerPeriod(double triggerPeriod) {
+        this.triggerPeriod = triggerPeriod;
+    }
+
+    @Parameter(optional = true, name=TRIGGER_BYTES_PARAM,
+            description="Specifies the number of bytes after which a consistent region is triggered. "
+                    + "The bytes are the sizes of the serialized keys and messages as received from Kafka. "
+                    + "This bounds the amount of data that is processed between two checkpoints independent of the message sizes. "
+                    + "It can be combined with the **triggerCount** and **triggerPeriod** parameters; "
+                    + "the region is triggered by the condition that is met first. "
+                    + "This parameter is only used if the operator is the start of an "
+                    + "*operator driven* consistent region and is ignored otherwise.")
+    public void setTriggerBytes(long triggerBytes) {
+        this.triggerBytes = triggerBytes;
+    }
+
+    @Parameter(optional = true, name=QUEUE_WAIT_STRATEGY_PARAM,
+            description="Specifies how the thread that submits tuples waits for new messages when the "
+                    + "internal message queue is empty. Valid options include: `BusySpin`, `Yield`, and `Park`.\\n"
+                    + "* `BusySpin`: The thread spins on the queue. This gives the lowest latency, but keeps one CPU core busy "
+                    + "also when no messages arrive."
+                    + "\\n"
+                    + "* `Yield`: The thread spins on the queue, but yields the CPU after every unsuccessful attempt."
+                    + "\\n"
+                    + "* `Park`: The thread is parked and woken up when new messages arrive. This consumes least CPU "
+                    + "and is the best choice for throughput oriented applications."
+                    + "\\n"
+                    + "\\n"
+                    + "If this parameter is not specified, the wait strategy is `Park`.")
+    public void setQueueWaitStrategy(WaitStrategy queueWaitStrategy) {
+        this.queueWaitStrategy = queueWaitStrategy;
+    }
+
+    @Parameter(optional = true, name=COMMIT_COUNT_PARAM,
+            description="Specifies the number of submitted tuples after which the offsets of the submitted messages "
+                    + "are committed to Kafka. The offsets are also committed after **commitPeriod** seconds. "
+                    + "This parameter is ignored when the consumer property `enable.auto.commit` is `true`. "
+                    + "If this parameter is not specified, offsets are committed only periodically.")
+    public void setCommitCount(int commitCount) {
+        this.commitCount = commitCount;
+    }
+
+    @Parameter(optional = true, name=COMMIT_PERIOD_PARAM,
+            description="Specifies the period in seconds after which the offsets of the submitted messages are "
+                    + "committed to Kafka when new tuples have been submitted. "
+                    + "This parameter is ignored when the consumer property `enable.auto.commit` is `true`. "
+                    + "If this parameter is not specified, the commit period is 5 seconds.")
+    public void setCommitPeriod(double commitPeriod) {
+        this.commitPeriod = commitPeriod;
+    }
+
+    @Parameter(optional = true, name=PERMIT_BATCH_SIZE_PARAM,
+            description="Specifies the maximum number of tuples that are submitted while holding one consistent region permit. "
+                    + "Acquiring one permit for a batch of tuples instead of one permit for every tuple increases the "
+                    + "throughput in a consistent region. A batch ends earlier when the messages received with one "
+                    + "poll have been submitted, or after 50 milliseconds. "
+                    + "This parameter is ignored when the operator is not in a consistent region. "
+                    + "If this parameter is not specified, a permit is acquired for every tuple.")
+    public void setPermitBatchSize(int permitBatchSize) {
+        this.permitBatchSize = permitBatchSize;
+    }
+
+    @Parameter(optional = true, name=DIRECT_SUBMISSION_PARAM,
+            description="When set to `true`, the tuples are created and submitted by the thread that polls the messages "
+                    + "from Kafka, and the internal message queue is bypassed. This avoids the hand-over of the messages "
+                    + "to a separate thread and reduces the end-to-end latency. As the thread that submits the tuples "
+                    + "does not poll while downstream operators apply backpressure, messages are fetched only on demand. "
+                    + "Control port tuples are processed between two polls. "
+                    + "With a rate limit, the thread does not wait for the limit; it pauses fetching and fetches "
+                    + "the messages beyond the limit again later, so that it keeps polling. "
+                    + "This mode cannot be used when the operator is part of a consistent region. "
+                    + "If this parameter is not specified, the messages are submitted from a separate thread, "
+                    + "which decouples fetching from Kafka and tuple submission.")
+    public void setDirectSubmission(boolean directSubmission) {
+        this.directSubmission = directSubmission;
+    }
+
+    @Parameter(optional = true, name=DESERIALIZATION_THREADS_PARAM,
+            description="Specifies the number of threads that deserialize the received messages. When specified, "
+                    + "the consumer receives the raw bytes from Kafka, and the messages are deserialized concurrently "
+                    + "by a pool of threads, which allows to use multiple cores for expensive deserialization, "
+                    + "for example of large strings or with custom deserializers. Messages of the same partition "
+                    + "are always submitted in the order of their offsets. "
+                    + "Every thread uses its own instances of the key and value deserializers. "
+                    + "If this parameter is not specified, the messages are deserialized by the thread that polls from Kafka.")
+    public void setDeserializationThreads(int deserializationThreads) {
+        this.deserializationThreads = deserializationThreads;
+    }
+
+    @Parameter(optional = true, name=DEAD_LETTER_TOPIC_PARAM,
+            description="Specifies a topic, to which messages with a malformed key or value are forwarded. "
+                    + "A message is malformed when the deserializer fails, or returns null for data that is not null. "
+                    + "When specified, the consumer receives the raw bytes from Kafka, and the messages are deserialized "
+                    + "by the operator, so that the original bytes of malformed messages can be forwarded unchanged. "
+                    + "The forwarded messages keep the key, value, timestamp, and headers of the original message, and have the additional headers "
+                    + "`streamsx.kafka.original.topic`, `streamsx.kafka.original.partition`, and `streamsx.kafka.original.offset`, "
+                    + "which contain the origin of the message as UTF-8 strings. "
+                    + "The messages are produced asynchronously to the cluster of the consumer with the producer configs that are found in the consumer properties. "
+                    + "Forwarded messages are not submitted, and are counted in the **nDroppedMalformedMessages** metric. "
+                    + "When the operator is restarted, or a consistent region is reset, malformed messages can be forwarded more than once.\\n"
+                    + "\\n"
+                    + "If this parameter is not specified, messages with a malformed value are dropped, "
+                    + "and messages with a malformed key are submitted with the default key.")
+    public void setDeadLetterTopic(String deadLetterTopic) {
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    @Parameter(optional = true, name=CONSUMER_THREADS_PARAM,
+            description="Specifies the number of Kafka consumers within the operator. Each consumer has its own "
+                    + "thread that polls from Kafka and its own thread that submits tuples, so that one operator "
+                    + "can receive messages from multiple partitions in parallel without using `@parallel`. "
+                    + "When the operator subscribes to topics, all consumers join the same consumer group. "
+                    + "When partitions are assigned, which is always the case in a consistent region, the partitions "
+                    + "of each topic are distributed round-robin over the consumers. "
+                    + "Messages of the same partition are submitted in order, but messages from different "
+                    + "partitions are interleaved in the output stream. "
+                    + "If this parameter is not specified, the operator uses one consumer.")
+    public void setConsumerThreads(int consumerThreads) {
+        this.consumerThreads = consumerThreads;
+    }
+
+    @Parameter(optional = true, name=FULL_CHECKPOINT_INTERVAL_PARAM,
+            description="Specifies how often the operator writes a full checkpoint when it is part of a consistent region. "
+                    + "When set to N > 1, every N-th checkpoint contains the offsets of all partitions, and the checkpoints "
+                    + "in between contain only the offsets that changed since the last full checkpoint. This reduces the "
+                    + "size of the checkpoints when the operator consumes many partitions, of which only few receive "
+                    + "messages between checkpoints. The last full checkpoint is also stored in the JCP, so that the "
+                    + "operator can restore a checkpoint that contains only the changes. "
+                    + "The default value is 1, which means that every checkpoint is a full checkpoint. "
+                    + "This parameter is ignored when the operator is not part of a consistent region.")
+    public void setFullCheckpointInterval(int fullCheckpointInterval) {
+        this.fullCheckpointInterval = fullCheckpointInterval;
+    }
+
+    @Parameter(optional = true, name=ASSIGN_BY_CHANNEL_PARAM,
+            description="When set to `true` and the operator is within a parallel region, every channel consumes "
+                    + "a disjoint subset of the partitions of the topics. The partitions of each topic are distributed "
+                    + "round-robin over the channels, and over the consumer threads within a channel, using the "
+                    + "channel index and the number of channels. The operator assigns itself to its partitions instead of subscribing, "
+                    + "so that a restarted channel does not cause a group rebalance that stops the other channels, "
+                    + "and the operator can be used in a consistent region. "
+                    + "Committed offsets are still stored for the consumer group given by `group.id`. "
+                    + "Partitions, which are added to a topic after the operator has started, are not consumed. "
+                    + "This parameter is ignored when the operator is not within a parallel region, or when the operator has an input port. "
+                    + "The default value is `false`.")
+    public void setAssignByChannel(boolean assignByChannel) {
+        this.assignByChannel = assignByChannel;
+    }
+
+    @Parameter(optional = true, name=MAX_RECORDS_PER_SECOND_PARAM,
+            description="Specifies the maximum number of messages per second that the operator submits as tuples. "
+                    + "The rate is enforced with a token bucket, which allows a burst of one second. "
+                    + "Messages are fetched from Kafka only as fast as the tuples are submitted. "
+                    + "The limit can be changed at runtime with a control port tuple, which can be created with the "
+                    + "`createMessageThrottle()` function. "
+                    + "If this parameter is not specified, the message rate is not limited.")
+    public void setMaxRecordsPerSecond(double maxRecordsPerSecond) {
+        this.maxRecordsPerSecond = maxRecordsPerSecond;
+    }
+
+    @Parameter(optional = true, name=MAX_BYTES_PER_SECOND_PARAM,
+            description="Specifies the maximum number of bytes per second that the operator submits as tuples. "
+                    + "The bytes are the sizes of the serialized keys and messages as received from Kafka. "
+                    + "The rate is enforced with a token bucket, which allows a burst of one second. "
+                    + "The limit can be changed at runtime with a control port tuple, which can be created with the "
+                    + "`createMessageThrottle()` function. "
+                    + "If this parameter is not specified, the byte rate is not limited.")
+    public void setMaxBytesPerSecond(double maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    @Parameter(optional = true, name=PUNCTUATION_MODE_PARAM,
+            description="Specifies when the operator submits window punctuations, so that downstream operators can "
+                    + "process the tuples in micro-batches. Valid options include: `None`, `Batch`, `Count`, and `Time`.\\n"
+                    + "* `None`: No window punctuations are submitted."
+                    + "\\n"
+                    + "* `Batch`: A window punctuation is submitted after the messages of each batch that is polled from Kafka. "
+                    + "The size of the batches is limited by the consumer property `max.poll.records`."
+                    + "\\n"
+                    + "* `Count`: A window punctuation is submitted after every N tuples. N is specified by the **punctuationCount** parameter."
+                    + "\\n"
+                    + "* `Time`: A window punctuation is submitted periodically. The period is specified by the **punctuationPeriod** parameter.\\n"
+                    + "\\n"
+                    + "With `Batch` and `Time`, a window punctuation is only submitted when tuples have been submitted since "
+                    + "the previous window punctuation. "
+                    + "When the operator consumes with multiple threads, the window punctuations apply to the tuples of all threads. "
+                    + "If this parameter is not specified, no window punctuations are submitted.")
+    public void setPunctuationMode(PunctuationMode punctuationMode) {
+        this.punctuationMode = punctuationMode;
+    }
+
+    @Parameter(optional = true, name=PUNCTUATION_COUNT_PARAM,
+            description="Specifies the number of tuples after which a window punctuation is submitted. "
+                    + "This parameter is only used when the **punctuationMode** parameter is set to `Count`. "
+                    + "The value must be greater than zero.")
+    public void setPunctuationCount(int punctuationCount) {
+        this.punctuationCount = punctuationCount;
+    }
+
+    @Parameter(optional = true, name=PUNCTUATION_PERIOD_PARAM,
+            description="Specifies the period in seconds, in which window punctuations are submitted. "
+                    + "This parameter is only used when the **punctuationMode** parameter is set to `Time`. "
+                    + "The value must be greater than zero.")
+    public void setPunctuationPeriod(double punctuationPeriod) {
+        this.punctuationPeriod = punctuationPeriod;
+    }
+
+    @ContextCheck(compile = true)
+    public static void checkDirectSubmission(OperatorContextChecker checker) {
+        OperatorContext operatorContext = checker.getOperatorContext();
+        if (operatorContext.getParameterNames().contains(DIRECT_SUBMISSION_PARAM)
+                && operatorContext.getOptionalContext(ConsistentRegionContext.class) != null) {
+            checker.setInvalidContext(Messages.getString("PARAM_IN_CONSISTENT_REGION", DIRECT_SUBMISSION_PARAM), new Object[0]); //$NON-NLS-1$
+        }
+    }
+
+    @ContextCheck(compile = true)
+    public static void checkEndPosition(OperatorContextChecker checker) {
+        OperatorContext operatorContext = checker.getOperatorContext();
+        if (operatorContext.getParameterNames().contains(END_POSITION_PARAM)
+                && operatorContext.getOptionalContext(ConsistentRegionContext.class) != null) {
+            checker.setInvalidContext(Messages.getString("PARAM_IN_CONSISTENT_REGION", END_POSITION_PARAM), new Object[0]); //$NON-NLS-1$
+        }
+    }
+
+    @ContextCheck(compile = false, runtime = true)
+    public static void checkBatchParams(OperatorContextChecker checker) {
+        Set<String> paramNames = checker.getOperatorContext().getParameterNames();
+        if (paramNames.contains(PERMIT_BATCH_SIZE_PARAM)) {
+            int permitBatchSize = Integer.valueOf(checker.getOperatorContext().getParameterValues(PERMIT_BATCH_SIZE_PARAM).get(0));
+            if (permitBatchSize <= 0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", PERMIT_BATCH_SIZE_PARAM, "" + permitBatchSize, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+        if (paramNames.contains(COMMIT_COUNT_PARAM)) {
+            int commitCount = Integer.valueOf(checker.getOperatorContext().getParameterValues(COMMIT_COUNT_PARAM).get(0));
+            if (commitCount <= 0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", COMMIT_COUNT_PARAM, "" + commitCount, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+        if (paramNames.contains(COMMIT_PERIOD_PARAM)) {
+            double commitPeriod = Double.valueOf(checker.getOperatorContext().getParameterValues(COMMIT_PERIOD_PARAM).get(0));
+            if (commitPeriod <= 0.0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", COMMIT_PERIOD_PARAM, "" + commitPeriod, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+        if (paramNames.contains(CONSUMER_THREADS_PARAM)) {
+            int consumerThreads = Integer.valueOf(checker.getOperatorContext().getParameterValues(CONSUMER_THREADS_PARAM).get(0));
+            if (consumerThreads <= 0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", CONSUMER_THREADS_PARAM, "" + consumerThreads, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+        if (paramNames.contains(DESERIALIZATION_THREADS_PARAM)) {
+            int deserializationThreads = Integer.valueOf(checker.getOperatorContext().getParameterValues(DESERIALIZATION_THREADS_PARAM).get(0));
+            if (deserializationThreads <= 0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", DESERIALIZATION_THREADS_PARAM, "" + deserializationThreads, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+        for (String rateParam: new String[] {MAX_RECORDS_PER_SECOND_PARAM, MAX_BYTES_PER_SECOND_PARAM}) {
+            if (paramNames.contains(rateParam)) {
+                double rate = Double.valueOf(checker.getOperatorContext().getParameterValues(rateParam).get(0));
+                if (rate <= 0.0) {
+                    checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", rateParam, "" + rate, "0"), //$NON-NLS-1$
+                            new Object[0]);
+                }
+            }
+        }
+        if (paramNames.contains(PUNCTUATION_COUNT_PARAM)) {
+            int punctuationCount = Integer.valueOf(checker.getOperatorContext().getParameterValues(PUNCTUATION_COUNT_PARAM).get(0));
+            if (punctuationCount <= 0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", PUNCTUATION_COUNT_PARAM, "" + punctuationCount, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+        if (paramNames.contains(PUNCTUATION_PERIOD_PARAM)) {
+            double punctuationPeriod = Double.valueOf(checker.getOperatorContext().getParameterValues(PUNCTUATION_PERIOD_PARAM).get(0));
+            if (punctuationPeriod <= 0.0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", PUNCTUATION_PERIOD_PARAM, "" + punctuationPeriod, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+        if (paramNames.contains(FULL_CHECKPOINT_INTERVAL_PARAM)) {
+            int fullCheckpointInterval = Integer.valueOf(checker.getOperatorContext().getParameterValues(FULL_CHECKPOINT_INTERVAL_PARAM).get(0));
+            if (fullCheckpointInterval <= 0) {
+                checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", FULL_CHECKPOINT_INTERVAL_PARAM, "" + fullCheckpointInterval, "0"), //$NON-NLS-1$
+                        new Object[0]);
+            }
+        }
+    }
+
     @ContextCheck(compile = false, runtime = true)
     public static void checkParams(OperatorContextChecker checker) {
         StreamSchema streamSchema = checker.getOperatorContext().getStreamingOutputs().get(0).getStreamSchema();
@@ -358,6 +797,43 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         		}
         	}
         }
+
+        if (paramNames.contains(PUNCTUATION_MODE_PARAM)) {
+            String punctuationModeValue = checker.getOperatorContext().getParameterValues(PUNCTUATION_MODE_PARAM).get(0);
+            if (punctuationModeValue.equals(PunctuationMode.Count.name()) && !paramNames.contains(PUNCTUATION_COUNT_PARAM)) {
+                checker.setInvalidContext(Messages.getString("PARAM_REQUIRED_FOR_VALUE", PUNCTUATION_COUNT_PARAM, PUNCTUATION_MODE_PARAM, punctuationModeValue), new Object[0]); //$NON-NLS-1$
+            } else if (punctuationModeValue.equals(PunctuationMode.Time.name()) && !paramNames.contains(PUNCTUATION_PERIOD_PARAM)) {
+                checker.setInvalidContext(Messages.getString("PARAM_REQUIRED_FOR_VALUE", PUNCTUATION_PERIOD_PARAM, PUNCTUATION_MODE_PARAM, punctuationModeValue), new Object[0]); //$NON-NLS-1$
+            }
+        }
+
+        if (paramNames.contains(END_POSITION_PARAM)) {
+            String endPositionValue = checker.getOperatorContext().getParameterValues(END_POSITION_PARAM).get(0);
+            if (endPositionValue.equals(EndPosition.Time.name())) {
+                // check that the endTime param exists if the endPosition param is set to 'Time'
+                if (!paramNames.contains(END_TIME_PARAM)) {
+                    checker.setInvalidContext(Messages.getString("END_TIME_PARAM_NOT_FOUND"), new Object[0]); //$NON-NLS-1$
+                }
+            } else if (endPositionValue.equals(EndPosition.Offset.name())) {
+                // check that the endOffset param exists if the endPosition param is set to 'Offset'
+                if (!paramNames.contains(END_OFFSET_PARAM)) {
+                    checker.setInvalidContext(Messages.getString("END_OFFSET_PARAM_NOT_FOUND"), new Object[0]); //$NON-NLS-1$
+                    return;
+                }
+
+                int numPartitionValues = paramNames.contains(PARTITION_PARAM)? checker.getOperatorContext().getParameterValues(PARTITION_PARAM).size(): 0;
+                int numEndOffsetValues = checker.getOperatorContext().getParameterValues(END_OFFSET_PARAM).size();
+                if (numPartitionValues != numEndOffsetValues) {
+                    checker.setInvalidContext(Messages.getString("PARTITION_SIZE_NOT_EQUAL_TO_END_OFFSET_SIZE"), new Object[0]); //$NON-NLS-1$
+                    return;
+                }
+
+                int numTopicValues = checker.getOperatorContext().getParameterValues(TOPIC_PARAM).size();
+                if (numTopicValues > 1) {
+                    checker.setInvalidContext(Messages.getString("ONLY_ONE_TOPIC_WHEN_USING_ENDOFFSET_PARAM"), new Object[0]); //$NON-NLS-1$
+                }
+            }
+        }
     }
 
     private static void checkUserSpecifiedAttributeNameExists(OperatorContextChecker checker, String paramNameToCheck) {
@@ -381,7 +857,8 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
                 .getOptionalContext(ConsistentRegionContext.class);
         if (crContext != null) {
             if (crContext.isStartOfRegion() && crContext.isTriggerOperator()) {
-                if (!checker.getOperatorContext().getParameterNames().contains(TRIGGER_COUNT_PARAM)) {
+                Set<String> paramNames = checker.getOperatorContext().getParameterNames();
+                if (!paramNames.contains(TRIGGER_COUNT_PARAM) && !paramNames.contains(TRIGGER_PERIOD_PARAM) && !paramNames.contains(TRIGGER_BYTES_PARAM)) {
                     checker.setInvalidContext(Messages.getString("TRIGGER_PARAM_MISSING"), new Object[0]); //$NON-NLS-1$
                 }
             }
@@ -394,11 +871,28 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
                 .getOptionalContext(ConsistentRegionContext.class);
         if (crContext != null) {
             if (crContext.isStartOfRegion() && crContext.isTriggerOperator()) {
-                // here we have checked (compile time) that the TRIGGER_COUNT_PARAM parameter exists...
-                int triggerCount = Integer.valueOf(checker.getOperatorContext().getParameterValues(TRIGGER_COUNT_PARAM).get(0));
-                if (triggerCount <= 0) {
-                    checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", TRIGGER_COUNT_PARAM, "" + triggerCount, "0"), //$NON-NLS-1$
-                            new Object[0]);
+                // here we have checked (compile time) that at least one of the trigger parameters exists...
+                Set<String> paramNames = checker.getOperatorContext().getParameterNames();
+                if (paramNames.contains(TRIGGER_COUNT_PARAM)) {
+                    int triggerCount = Integer.valueOf(checker.getOperatorContext().getParameterValues(TRIGGER_COUNT_PARAM).get(0));
+                    if (triggerCount <= 0) {
+                        checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", TRIGGER_COUNT_PARAM, "" + triggerCount, "0"), //$NON-NLS-1$
+                                new Object[0]);
+                    }
+                }
+                if (paramNames.contains(TRIGGER_PERIOD_PARAM)) {
+                    double triggerPeriod = Double.valueOf(checker.getOperatorContext().getParameterValues(TRIGGER_PERIOD_PARAM).get(0));
+                    if (triggerPeriod <= 0.0) {
+                        checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", TRIGGER_PERIOD_PARAM, "" + triggerPeriod, "0"), //$NON-NLS-1$
+                                new Object[0]);
+                    }
+                }
+                if (paramNames.contains(TRIGGER_BYTES_PARAM)) {
+                    long triggerBytes = Long.valueOf(checker.getOperatorContext().getParameterValues(TRIGGER_BYTES_PARAM).get(0));
+                    if (triggerBytes <= 0) {
+                        checker.setInvalidContext(Messages.getString("INVALID_PARAMETER_VALUE_GT", TRIGGER_BYTES_PARAM, "" + triggerBytes, "0"), //$NON-NLS-1$
+                                new Object[0]);
+                    }
                 }
             }
         }
@@ -414,18 +908,66 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
     		 *  * topic
     		 *  * partition
     		 *  * startPosition
+    		 *  * endPosition
     		 */     		
     		if(paramNames.contains(TOPIC_PARAM) 
     				|| paramNames.contains(PARTITION_PARAM) 
-    				|| paramNames.contains(START_POSITION_PARAM)) {
+    				|| paramNames.contains(START_POSITION_PARAM)
+    				|| paramNames.contains(END_POSITION_PARAM)) {
     			System.err.println(Messages.getString("PARAMS_IGNORED_WITH_INPUT_PORT")); //$NON-NLS-1$
     		}
     		
-    		StreamingInput<Tuple> inputPort = inputPorts.get(0);
-    		checker.checkAttributeType(inputPort.getStreamSchema().getAttribute(0), MetaType.RSTRING);
+    		StreamSchema inputSchema = inputPorts.get(0).getStreamSchema();
+    		Attribute topicPartitionOffsetsAttr = inputSchema.getAttribute(CONTROL_TOPIC_PARTITION_OFFSETS_ATTR_NAME);
+    		if (topicPartitionOffsetsAttr != null) {
+    		    // structured control port: action and list of topic partition offsets
+    		    if (checker.checkAttributeType(topicPartitionOffsetsAttr, MetaType.LIST)) {
+    		        checkTopicPartitionOffsetType(checker, ((CollectionType) topicPartitionOffsetsAttr.getType()).getElementType());
+    		    }
+    		    Attribute actionAttr = inputSchema.getAttribute(CONTROL_ACTION_ATTR_NAME);
+    		    if (actionAttr == null) {
+    		        checker.setInvalidContext(Messages.getString("INPUT_ATTRIBUTE_NOT_FOUND", CONTROL_ACTION_ATTR_NAME), new Object[0]); //$NON-NLS-1$
+    		    } else if (checker.checkAttributeType(actionAttr, MetaType.RSTRING, MetaType.ENUM)
+    		            && actionAttr.getType().getMetaType() == MetaType.ENUM) {
+    		        // the enum is read as TopicPartitionUpdateAction, which must have a constant for every identifier
+    		        for (String identifier: ((EnumType) actionAttr.getType()).getIdentifiers()) {
+    		            try {
+    		                TopicPartitionUpdateAction.valueOf(identifier);
+    		            } catch (IllegalArgumentException e) {
+    		                checker.setInvalidContext(Messages.getString("INVALID_CONTROL_ACTION_IDENTIFIER", identifier, actionAttr.getType().getLanguageType()), new Object[0]); //$NON-NLS-1$
+    		            }
+    		        }
+    		    }
+    		} else {
+    		    checker.checkAttributeType(inputSchema.getAttribute(0), MetaType.RSTRING);
+    		}
     	}
     }
     
+    /**
+     * Checks the element type of the topic partition offsets list of the structured control port,
+     * which must be a tuple with the attributes of the TopicPartitionOffset type.
+     * @param checker     the context checker
+     * @param elementType the element type of the list
+     */
+    private static void checkTopicPartitionOffsetType(OperatorContextChecker checker, Type elementType) {
+        if (elementType.getMetaType() != MetaType.TUPLE) {
+            checker.setInvalidContext(Messages.getString("INVALID_CONTROL_LIST_ELEMENT_TYPE", CONTROL_TOPIC_PARTITION_OFFSETS_ATTR_NAME, elementType.getLanguageType()), new Object[0]); //$NON-NLS-1$
+            return;
+        }
+        final StreamSchema elementSchema = ((TupleType) elementType).getTupleSchema();
+        final String[] names = {CONTROL_TOPIC_ATTR_NAME, CONTROL_PARTITION_ATTR_NAME, CONTROL_OFFSET_ATTR_NAME};
+        final MetaType[] types = {MetaType.RSTRING, MetaType.INT32, MetaType.INT64};
+        for (int i = 0; i < names.length; ++i) {
+            final Attribute attr = elementSchema.getAttribute(names[i]);
+            if (attr == null) {
+                checker.setInvalidContext(Messages.getString("INPUT_ATTRIBUTE_NOT_FOUND", CONTROL_TOPIC_PARTITION_OFFSETS_ATTR_NAME + "." + names[i]), new Object[0]); //$NON-NLS-1$ //$NON-NLS-2$
+            } else {
+                checker.checkAttributeType(attr, types[i]);
+            }
+        }
+    }
+
     @ContextCheck(compile = true)
     public static void checkForTopicOrInputPort(OperatorContextChecker checker) {
     	List<StreamingInput<Tuple>> inputPorts = checker.getOperatorContext().getStreamingInputs();
@@ -442,13 +984,15 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
                 + context.getPE().getJobId());
         shutdown = new AtomicBoolean(false);
         gson = new Gson();
+        structuredControlPort = context.getStreamingInputs().size() > 0
+                && context.getStreamingInputs().get(0).getStreamSchema().getAttribute(CONTROL_TOPIC_PARTITION_OFFSETS_ATTR_NAME) != null;
+        enumControlAction = structuredControlPort
+                && context.getStreamingInputs().get(0).getStreamSchema().getAttribute(CONTROL_ACTION_ATTR_NAME).getType().getMetaType() == MetaType.ENUM;
 
         StreamSchema outputSchema = context.getStreamingOutputs().get(0).getStreamSchema();
         hasOutputKey = outputSchema.getAttribute(outputKeyAttrName) != null;
-        hasOutputTopic = outputSchema.getAttribute(outputTopicAttrName) != null;
-        hasOutputTimetamp = outputSchema.getAttribute(outputMessageTimestampAttrName) != null;
-        hasOutputPartition = outputSchema.getAttribute(outputPartitionAttrName) != null;
-        hasOutputOffset = outputSchema.getAttribute(outputOffsetAttrName) != null;
+        tupleConverter = new RecordTupleConverter(outputSchema, outputMessageAttrName, outputKeyAttrName, outputTopicAttrName,
+                outputOffsetAttrName, outputPartitionAttrName, outputMessageTimestampAttrName);
         
         
         Class<?> keyClass = hasOutputKey ? getAttributeType(context.getStreamingOutputs().get(0), outputKeyAttrName)
@@ -460,19 +1004,84 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         if(groupId != null && !groupId.isEmpty()) {
             kafkaProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         }
-        consumer = new KafkaConsumerClient.KafkaConsumerClientBuilder()
-        			.setKafkaProperties(kafkaProperties)
-        			.setKeyClass(keyClass)
-        			.setValueClass(valueClass)
-        			.setOperatorContext(context)
-        			.build();
-        
-        // If an exception occurred during init, throw it!
-        if(consumer.getInitializationException() != null) {
-        	Exception e = consumer.getInitializationException();
-            e.printStackTrace();
-            logger.error(e.getLocalizedMessage(), e);
-            throw e;      	
+        crContext = context.getOptionalContext(ConsistentRegionContext.class);
+        lastOpDrivenCRNanos = System.nanoTime();
+        rateLimiter.setRates(maxRecordsPerSecond, maxBytesPerSecond);
+        consumers = new ArrayList<>(consumerThreads);
+        if (assignByChannel && context.getChannel() >= 0 && !context.getStreamingInputs().isEmpty()) {
+            logger.warn(ASSIGN_BY_CHANNEL_PARAM + " is ignored because the operator has an input port"); //$NON-NLS-1$
+        }
+        final AtomicInteger numPendingMessages = new AtomicInteger(0);
+        // the consumption is bounded only when the topics are given as parameters
+        final boolean bounded = endPosition != null && context.getStreamingInputs().size() == 0 && topics != null;
+        final Map<TopicPartition, Long> endOffsetMap = new HashMap<>();
+        if (bounded && endPosition == EndPosition.Offset) {
+            for (int i = 0; i < partitions.size(); ++i) {
+                endOffsetMap.put(new TopicPartition(topics.get(0), partitions.get(i)), endOffsets.get(i));
+            }
+        }
+        for (int i = 0; i < consumerThreads; ++i) {
+            KafkaOperatorProperties clientProperties = kafkaProperties;
+            if (i > 0) {
+                // the first client has added the generated group ID and client ID to the properties
+                clientProperties = new KafkaOperatorProperties();
+                clientProperties.putAll(kafkaProperties);
+            }
+            KafkaConsumerClient.KafkaConsumerClientBuilder builder = new KafkaConsumerClient.KafkaConsumerClientBuilder()
+            			.setKafkaProperties(clientProperties)
+            			.setKeyClass(keyClass)
+            			.setValueClass(valueClass)
+            			.setOperatorContext(context)
+            			.setQueueWaitStrategy(queueWaitStrategy)
+            			.setCommitCount(commitCount)
+            			.setCommitPeriodMs((long)(commitPeriod * 1000.0))
+            			.setDeserializationThreads(deserializationThreads)
+            			.setDeadLetterTopic(deadLetterTopic)
+            			.setClientIndex(i, consumerThreads)
+            			.setFullCheckpointInterval(fullCheckpointInterval)
+            			.setPendingMessagesCounter(numPendingMessages);
+            if (assignByChannel && context.getChannel() >= 0 && context.getStreamingInputs().isEmpty()) {
+                // with an input port the partitions are assigned by control tuples, which must not be filtered by channel
+                builder.setChannel(context.getChannel(), context.getMaxChannels());
+            }
+            if (bounded) {
+                builder.setEndPosition(endPosition, endTime, endOffsetMap);
+                nUnfinishedConsumers.incrementAndGet();
+            }
+            if (directSubmission && crContext == null) {
+                builder.setRecordHandler(new RecordHandler() {
+                    @Override
+                    public long getDelayNanos(ConsumerRecord<?, ?> record) {
+                        // the event thread must not sleep; the client pauses fetching instead
+                        return rateLimiter.tryAcquire(recordSize(record));
+                    }
+
+                    @Override
+                    public void handle(ConsumerRecord<?, ?> record) throws Exception {
+                        submitRecord(record);
+                    }
+
+                    @Override
+                    public void endOfBatch() throws Exception {
+                        if (punctuationMode == PunctuationMode.Batch) punctuateWindow();
+                    }
+
+                    @Override
+                    public void endOfData() throws Exception {
+                        consumerFinished();
+                    }
+                });
+            }
+            KafkaConsumerClient consumer = builder.build();
+
+            // If an exception occurred during init, throw it!
+            if(consumer.getInitializationException() != null) {
+            	Exception e = consumer.getInitializationException();
+                e.printStackTrace();
+                logger.error(e.getLocalizedMessage(), e);
+                throw e;      	
+            }
+            consumers.add(consumer);
         }
         
         // input port not use, so topic must be defined
@@ -480,37 +1089,46 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
             if (topics != null) {
                 registerForDataGovernance(context, topics);
                 
-                if(startPosition == StartPosition.Time) {
-                	consumer.subscribeToTopicsWithTimestamp(topics, partitions, startTime);
-                } else if(startPosition == StartPosition.Offset) {
-                	consumer.subscribeToTopicsWithOffsets(topics, partitions, startOffsets);
-                } else {
-                	consumer.subscribeToTopics(topics, partitions, startPosition);
+                for (KafkaConsumerClient consumer: consumers) {
+                    if(startPosition == StartPosition.Time) {
+                    	consumer.subscribeToTopicsWithTimestamp(topics, partitions, startTime);
+                    } else if(startPosition == StartPosition.Offset) {
+                    	consumer.subscribeToTopicsWithOffsets(topics, partitions, startOffsets);
+                    } else {
+                    	consumer.subscribeToTopics(topics, partitions, startPosition);
+                    }
                 }
             }	
         }
         
-        crContext = context.getOptionalContext(ConsistentRegionContext.class);
         if (crContext != null && context.getPE().getRelaunchCount() > 0) {
             resettingLatch = new CountDownLatch(1);
         }
 
-        processThread = getOperatorContext().getThreadFactory().newThread(new Runnable() {
+        processThreads = new ArrayList<>(consumerThreads);
+        if (directSubmission && crContext == null) {
+            // the tuples are submitted by the event threads of the consumer clients
+            return;
+        }
+        for (KafkaConsumerClient consumer: consumers) {
+            Thread processThread = getOperatorContext().getThreadFactory().newThread(new Runnable() {
 
-            @Override
-            public void run() {
-                try {
-                    produceTuples();
-                } catch (Exception e) {
-                    Logger.getLogger(this.getClass()).error("Operator error", e); //$NON-NLS-1$
-                    // Propagate all exceptions to the runtime to make the PE fail and possibly restart.
-                    // Otherwise this thread terminates leaving the PE in a healthy state without being healthy.
-                    throw new RuntimeException (e);
+                @Override
+                public void run() {
+                    try {
+                        produceTuples(consumer);
+                    } catch (Exception e) {
+                        Logger.getLogger(this.getClass()).error("Operator error", e); //$NON-NLS-1$
+                        // Propagate all exceptions to the runtime to make the PE fail and possibly restart.
+                        // Otherwise this thread terminates leaving the PE in a healthy state without being healthy.
+                        throw new RuntimeException (e);
+                    }
                 }
-            }
-        });
+            });
 
-        processThread.setDaemon(false);
+            processThread.setDaemon(false);
+            processThreads.add(processThread);
+        }
     }
 
     @Override
@@ -519,13 +1137,25 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         logger.trace("Operator " + context.getName() + " all ports are ready in PE: " + context.getPE().getPEId() //$NON-NLS-1$ //$NON-NLS-2$
                 + " in Job: " + context.getPE().getJobId()); //$NON-NLS-1$
 
-        if(processThread != null)
-        	processThread.start();
+        if (punctuationMode == PunctuationMode.Time) {
+            final long periodMillis = Math.max(1l, (long) (punctuationPeriod * 1000.0));
+            punctuationTask = context.getScheduledExecutorService().scheduleAtFixedRate(() -> punctuatePeriodically(),
+                    periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+        if(!processThreads.isEmpty())
+        	processThreads.forEach(t -> t.start());
+        else {
+            for (KafkaConsumerClient consumer: consumers) {
+                if(consumer.isAssignedToTopics()) {
+                    // direct submission: the consumer client submits the tuples when it polls
+                    consumer.sendStartPollingEvent(consumerPollTimeout);
+                }
+            }
+        }
     }
 
-    private void produceTuples() throws Exception {
+    private void produceTuples(KafkaConsumerClient consumer) throws Exception {
 
-        int nTuplesForOpDrivenCR = 0;
         if (crContext != null && resettingLatch != null) {
             logger.debug("Operator is in the middle of resetting. No tuples will be submitted until reset completes."); //$NON-NLS-1$
             try {
@@ -547,7 +1177,18 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
          * the while-loop, we run into `consumer.sendStopPollingEvent();`, which contains a wait, that another thread processes
          * the event. This will most likely not happen because this thread also has been interrupted and finished working.
          */
+        // the time to wait for the rate limit before the next record is submitted
+        long rateLimitWaitNanos = 0;
         while (!shutdown.get()) {
+            if (rateLimitWaitNanos > 0) {
+                // wait without holding a consistent region permit, so that the drain of the region is not delayed
+                try {
+                    TimeUnit.NANOSECONDS.sleep(rateLimitWaitNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                rateLimitWaitNanos = 0;
+            }
             if (crContext != null) {
                 try {
                     //logger.trace("Acquiring consistent region permit..."); //$NON-NLS-1$
@@ -563,20 +1204,55 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
                 //logger.trace("Polling for messages, timeout=" + consumerPollTimeout); //$NON-NLS-1$
                 ConsumerRecord<?, ?> record = consumer.getNextRecord();
                 if(record != null) {
-                	submitRecord(record);
+                    // Submit up to 'permitBatchSize' records of the current poll batch with one single permit,
+                    // but hold the permit not longer than PERMIT_BATCH_TIME_BUDGET_NANOS.
+                    // The batch ends when the rate limit is exceeded; the wait for the rate limit follows after the permit is released.
+                    // The offsets are saved once per run of records of the same partition.
+                    final long batchDeadline = System.nanoTime() + PERMIT_BATCH_TIME_BUDGET_NANOS;
+                    boolean triggerRegion = false;
+                    ConsumerRecord<?, ?> previous = null;
+                    int nSubmitted = 0;
+                    do {
+                        rateLimitWaitNanos = rateLimiter.take(recordSize(record));
+                        submitRecord(record);
+                        consumer.recordSubmitted(record);
+                        if (punctuationMode == PunctuationMode.Batch && consumer.isBatchExhausted()) {
+                            punctuateWindow();
+                        }
+                        if (crContext != null) {
+                            if (previous != null && (previous.partition() != record.partition() || !previous.topic().equals(record.topic()))) {
+                                // save offset for *next* record for {topic, partition}
+                                consumer.getOffsetManager().savePosition(previous.topic(), previous.partition(), previous.offset()+1l);
+                            }
+                            // only the thread that claims the trigger makes the region consistent
+                            if (crContext.isTriggerOperator()) {
+                                nTuplesForOpDrivenCR.incrementAndGet();
+                                if (triggerBytes > 0) {
+                                    nBytesForOpDrivenCR.addAndGet(recordSize(record));
+                                }
+                                triggerRegion = claimOpDrivenTrigger();
+                            }
+                        }
+                        previous = record;
+                        ++nSubmitted;
+                    } while (!triggerRegion && rateLimitWaitNanos == 0 && nSubmitted < permitBatchSize && System.nanoTime() < batchDeadline
+                            && (record = consumer.getNextBufferedRecord()) != null);
 
                     if (crContext != null) {
-                        // save offset for *next* record for {topic, partition} 
-                        consumer.getOffsetManager().savePosition(record.topic(), record.partition(), record.offset()+1l);
-                        if (crContext.isTriggerOperator() && ++nTuplesForOpDrivenCR >= triggerCount) {
-                            logger.debug("Making region consistent..."); //$NON-NLS-1$
-                            // makeConsistent blocks until all operators in the CR have drained and checkpointed
-                            boolean isSuccess = crContext.makeConsistent();
-                            nTuplesForOpDrivenCR = 0;
-                            logger.debug("Completed call to makeConsistent: isSuccess=" + isSuccess); //$NON-NLS-1$
+                        consumer.getOffsetManager().savePosition(previous.topic(), previous.partition(), previous.offset()+1l);
+                        if (triggerRegion) {
+                            makeRegionConsistent();
                         }
                     }
                 }
+                else if (crContext != null && crContext.isTriggerOperator() && triggerPeriod > 0.0 && claimOpDrivenTrigger()) {
+                    // no new messages; the trigger period may have elapsed for tuples submitted before
+                    makeRegionConsistent();
+                }
+                else if (consumer.isEndOfData()) {
+                    // bounded consumption: all records up to the end position have been submitted
+                    break;
+                }
             }
             catch (InterruptedException ie) {
                 logger.debug("Queue processing thread interrupted", ie);
@@ -590,7 +1266,14 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
             }
         }
         try {
-            consumer.sendStopPollingEvent();
+            if (consumer.isEndOfData()) {
+                // release the resources of the consumer
+                consumer.sendShutdownEvent(SHUTDOWN_TIMEOUT, SHUTDOWN_TIMEOUT_TIMEUNIT);
+                consumerFinished();
+            }
+            else {
+                consumer.sendStopPollingEvent();
+            }
         }
         catch (InterruptedException ie) {
             // interrupted during shutdown
@@ -598,6 +1281,60 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         }
     }
 
+    /**
+     * Called when a consumer client has reached the end position of a bounded consumption.
+     * When all consumer clients of the operator have finished, a final punctuation is submitted.
+     * @throws Exception the punctuation cannot be submitted
+     */
+    private void consumerFinished() throws Exception {
+        if (nUnfinishedConsumers.decrementAndGet() == 0) {
+            logger.info("End position reached for all partitions. Submitting final punctuation."); //$NON-NLS-1$
+            getOutput(0).punctuate(Punctuation.FINAL_MARKER);
+        }
+    }
+
+    /**
+     * Tests whether one of the trigger conditions of an operator driven consistent region is met, and claims the trigger
+     * for the calling thread. The trigger is claimed by only one thread until {@link #makeRegionConsistent()} has been called.
+     * The time condition is only met when tuples have been submitted since the region has been made consistent.
+     * @return `true` if the calling thread must make the region consistent, `false` otherwise.
+     */
+    private boolean claimOpDrivenTrigger() {
+        final int nTuples = nTuplesForOpDrivenCR.get();
+        final boolean due = (triggerCount > 0 && nTuples >= triggerCount)
+                || (triggerBytes > 0 && nBytesForOpDrivenCR.get() >= triggerBytes)
+                || (triggerPeriod > 0.0 && nTuples > 0 && System.nanoTime() - lastOpDrivenCRNanos >= (long) (triggerPeriod * 1e9));
+        return due && opDrivenCRTriggered.compareAndSet(false, true);
+    }
+
+    /**
+     * Makes the operator driven consistent region consistent and resets the trigger conditions.
+     * Must be called by the thread that has claimed the trigger with {@link #claimOpDrivenTrigger()} while holding a permit.
+     * @throws Exception makeConsistent failed
+     */
+    private void makeRegionConsistent() throws Exception {
+        logger.debug("Making region consistent..."); //$NON-NLS-1$
+        try {
+            // makeConsistent blocks until all operators in the CR have drained and checkpointed
+            boolean isSuccess = crContext.makeConsistent();
+            logger.debug("Completed call to makeConsistent: isSuccess=" + isSuccess); //$NON-NLS-1$
+        } finally {
+            nTuplesForOpDrivenCR.set(0);
+            nBytesForOpDrivenCR.set(0);
+            lastOpDrivenCRNanos = System.nanoTime();
+            opDrivenCRTriggered.set(false);
+        }
+    }
+
+    private static long recordSize(ConsumerRecord<?, ?> record) {
+        return Math.max(0, record.serializedKeySize()) + Math.max(0, record.serializedValueSize());
+    }
+
+    /**
+     * Submits the record without rate limit.
+     * @param record the record
+     * @throws Exception the record cannot be submitted
+     */
     private void submitRecord(ConsumerRecord<?, ?> record) throws Exception {
         if (logger.isTraceEnabled())
     	     logger.trace("Preparing to submit record: " + record.topic() + "-" + record.partition() + "[" + record.offset() + "]"); //$NON-NLS-1$
@@ -605,87 +1342,128 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         // in case of deserialization errors we return 'null', otherwise a vaild object.
         // In these cases we drop the record and increment the metric 'nMalformedMessages'.
         if (record.value() == null) {
-            logger.warn("dropping message with malformed value from topic = "
-                    + record.topic() + ", partition = " + record.partition() + ", offset = " + record.offset());
+            final long nSuppressed = malformedLogThrottle.tryLog();
+            if (nSuppressed >= 0) {
+                logger.warn("dropping message with malformed value from topic = "
+                        + record.topic() + ", partition = " + record.partition() + ", offset = " + record.offset()
+                        + LogThrottle.suppressedSuffix(nSuppressed));
+            }
             nMalformedMessages.increment();
             return;
         }
         final StreamingOutput<OutputTuple> out = getOutput(0);
         OutputTuple tuple = out.newTuple();
-        setTuple(tuple, outputMessageAttrName, record.value());
+        // if record.key() is null, we have no evidence that this happend really by a malformed key.
+        // It can also be an unkeyed message. So, dropping the message seems not appropriate in this case.
+        // The key attribute keeps its default value then.
+        tupleConverter.populate(record, tuple);
+        out.submit(tuple);
+        if (punctuationMode != PunctuationMode.None) {
+            final long nTuples = nTuplesForPunctuation.incrementAndGet();
+            if (punctuationMode == PunctuationMode.Count && nTuples % punctuationCount == 0) {
+                out.punctuate(Punctuation.WINDOW_MARKER);
+            }
+        }
+    }
 
-        if (hasOutputKey) {
-            // if record.key() is null, we have no evidence that this happend really by a malformed key.
-            // It can also be an unkeyed message. So, dropping the message seems not appropriate in this case.
-            // 
-            // key = null would be mapped to
-            // * empty rstring
-            // * 0 for Integer, or float64
-            // 
-            // in the key attribute of the outgoing tuple. 
-//            if (record.key() == null) {
-//                logger.warn("dropping message with malformed key from topic = "
-//                        + record.topic() + ", partition = " + record.partition() + ", offset = " + record.offset());
-//                nMalformedMessages.increment();
-//                return;
-//            }
-            setTuple(tuple, outputKeyAttrName, record.key());
+    /**
+     * Submits a window punctuation when tuples have been submitted since the last window punctuation.
+     * @throws Exception the punctuation cannot be submitted
+     */
+    private void punctuateWindow() throws Exception {
+        if (nTuplesForPunctuation.getAndSet(0) > 0) {
+            getOutput(0).punctuate(Punctuation.WINDOW_MARKER);
         }
+    }
 
-        if (hasOutputTopic) {
-            tuple.setString(outputTopicAttrName, record.topic());
+    /**
+     * Submits a window punctuation from the periodic task of the {@link PunctuationMode#Time} mode.
+     * In a consistent region, the punctuation is submitted while holding a permit.
+     */
+    private void punctuatePeriodically() {
+        try {
+            if (crContext != null) crContext.acquirePermit();
+            try {
+                punctuateWindow();
+            } finally {
+                if (crContext != null) crContext.releasePermit();
+            }
+        } catch (InterruptedException e) {
+            logger.debug("punctuation task interrupted"); //$NON-NLS-1$
+        } catch (Exception e) {
+            logger.error("failed to submit window punctuation: " + e.getLocalizedMessage(), e); //$NON-NLS-1$
         }
+    }
 
-        if(hasOutputOffset) {
-        	tuple.setLong(outputOffsetAttrName, record.offset());
+    @Override
+    public void process(StreamingInput<Tuple> stream, Tuple tuple) throws Exception {
+        final TopicPartitionUpdate update;
+        if (structuredControlPort) {
+            update = createTopicPartitionUpdate(tuple);
         }
-        
-        if(hasOutputPartition) {
-        	tuple.setInt(outputPartitionAttrName, record.partition());
+        else {
+            String jsonString = tuple.getString(0);
+            JsonObject jsonObj = gson.fromJson(jsonString, JsonObject.class);
+            if (jsonObj.has("action") && THROTTLE_ACTION.equalsIgnoreCase(jsonObj.get("action").getAsString())) { //$NON-NLS-1$ //$NON-NLS-2$
+                // changing the rate limits does not touch the consumers
+                updateRateLimits(jsonObj, jsonString);
+                return;
+            }
+            update = parseTopicPartitionUpdate(jsonObj, jsonString);
+        }
+        if (update == null) {
+            return;
+        }
+        // every client takes the partitions of the update that belong to its share.
+        // The update is applied asynchronously by the event threads; updates arriving in quick succession are merged.
+        for (KafkaConsumerClient consumer: consumers) {
+            consumer.sendUpdateTopicAssignmentEvent(update, consumerPollTimeout);
         }
-        
-        if(hasOutputTimetamp) {
-        	tuple.setLong(outputMessageTimestampAttrName, record.timestamp());
-        }            
-        out.submit(tuple);
     }
 
-    private void setTuple(OutputTuple tuple, String attrName, Object attrValue) throws Exception {
-    	if(attrValue == null)
-    		return; // do nothing
-    	
-        if (attrValue instanceof String || attrValue instanceof RString)
-            tuple.setString(attrName, (String) attrValue);
-        else if (attrValue instanceof Integer)
-            tuple.setInt(attrName, (Integer) attrValue);
-        else if (attrValue instanceof Double)
-            tuple.setDouble(attrName, (Double) attrValue);
-        else if (attrValue instanceof Float)
-            tuple.setFloat(attrName, (Float) attrValue);
-        else if (attrValue instanceof Long)
-            tuple.setLong(attrName, (Long) attrValue);
-        else if (attrValue instanceof Byte)
-            tuple.setByte(attrName, (Byte) attrValue);
-        else if (attrValue instanceof byte[])
-            tuple.setBlob(attrName, ValueFactory.newBlob((byte[]) attrValue));
-        else
-            throw new Exception(Messages.getString("UNSUPPORTED_TYPE_EXCEPTION", (attrValue.getClass().getTypeName()), attrName)); //$NON-NLS-1$
+    /**
+     * Creates the update of the topic partition assignment from a tuple of the structured control port schema.
+     * @param tuple the control port tuple
+     * @return the update or `null` if the action is invalid
+     */
+    private TopicPartitionUpdate createTopicPartitionUpdate(Tuple tuple) {
+        final TopicPartitionUpdateAction action;
+        if (enumControlAction) {
+            // the identifiers of the enum have been checked at compile time
+            action = tuple.getEnum(TopicPartitionUpdateAction.class, CONTROL_ACTION_ATTR_NAME);
+        }
+        else {
+            final String actionValue = tuple.getString(CONTROL_ACTION_ATTR_NAME);
+            try {
+                action = TopicPartitionUpdateAction.valueOf(actionValue.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.error(Messages.getString("INVALID_CONTROL_ACTION", actionValue)); //$NON-NLS-1$
+                return null;
+            }
+        }
+        final Map<TopicPartition, Long> topicPartitionOffsetMap = new HashMap<TopicPartition, Long>();
+        for (Object element: tuple.getList(CONTROL_TOPIC_PARTITION_OFFSETS_ATTR_NAME)) {
+            final Tuple tpo = (Tuple) element;
+            final long offset = action == TopicPartitionUpdateAction.ADD? tpo.getLong(CONTROL_OFFSET_ATTR_NAME): 0l;
+            topicPartitionOffsetMap.put(new TopicPartition(tpo.getString(CONTROL_TOPIC_ATTR_NAME), tpo.getInt(CONTROL_PARTITION_ATTR_NAME)), offset);
+        }
+        return new TopicPartitionUpdate(action, topicPartitionOffsetMap);
     }
 
-    @Override
-    public void process(StreamingInput<Tuple> stream, Tuple tuple) throws Exception {
-        
-        boolean interrupted = false;
+    /**
+     * Parses the update of the topic partition assignment from a JSON control port message.
+     * @param jsonObj    the parsed message
+     * @param jsonString the message
+     * @return the update or `null` if the message is invalid
+     */
+    private TopicPartitionUpdate parseTopicPartitionUpdate(JsonObject jsonObj, String jsonString) {
     	try {
-        	String jsonString = tuple.getString(0);
-        	JsonObject jsonObj = gson.fromJson(jsonString, JsonObject.class);
-        	
         	TopicPartitionUpdateAction action = null;
         	if(jsonObj.has("action")) { //$NON-NLS-1$
         		action = TopicPartitionUpdateAction.valueOf(jsonObj.get("action").getAsString().toUpperCase()); //$NON-NLS-1$
         	} else {
         		logger.error(Messages.getString("INVALID_JSON_MISSING_KEY", "action", jsonString)); //$NON-NLS-1$ //$NON-NLS-2$
-        		return;
+        		return null;
         	}
         	
         	Map<TopicPartition, Long> topicPartitionOffsetMap = null;
@@ -697,18 +1475,18 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         			JsonObject tpo = it.next().getAsJsonObject();
         			if(!tpo.has("topic")) { //$NON-NLS-1$
         				logger.error(Messages.getString("INVALID_JSON_MISSING_KEY", "topic", jsonString)); //$NON-NLS-1$ //$NON-NLS-2$
-        				return;
+        				return null;
         			}
         			
         			if(!tpo.has("partition")) { //$NON-NLS-1$
         				logger.error(Messages.getString("INVALID_JSON_MISSING_KEY", "partition", jsonString)); //$NON-NLS-1$ //$NON-NLS-2$
-        				return;
+        				return null;
         			}
         			
         			
         			if(action == TopicPartitionUpdateAction.ADD && !tpo.has("offset")) { //$NON-NLS-1$
         				logger.error(Messages.getString("INVALID_JSON_MISSING_KEY", "offset", jsonString)); //$NON-NLS-1$ //$NON-NLS-2$
-        				return;
+        				return null;
         			}
         			
         			String topic = tpo.get("topic").getAsString(); //$NON-NLS-1$
@@ -718,19 +1496,32 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         			topicPartitionOffsetMap.put(new TopicPartition(topic, partition), offset);
         		}
         	}
-        	
-        	consumer.sendStopPollingEvent();
-        	consumer.sendUpdateTopicAssignmentEvent(new TopicPartitionUpdate(action, topicPartitionOffsetMap));
-        } catch (InterruptedException e) {
-            // interrupted during shutdown
-            interrupted = true;
+        	return new TopicPartitionUpdate(action, topicPartitionOffsetMap);
     	} catch (Exception e) {
     		logger.error(e.getMessage(), e);
-    	} finally {
-        	if (!interrupted) consumer.sendStartPollingEvent(consumerPollTimeout);
+    		return null;
     	}
     }
     
+    /**
+     * Sets the rate limits from a control port message with action {@value #THROTTLE_ACTION}.
+     * Missing limits are left unchanged; values less than or equal to 0 remove a limit.
+     * @param jsonObj    the parsed message
+     * @param jsonString the message
+     */
+    private void updateRateLimits(JsonObject jsonObj, String jsonString) {
+        if (!jsonObj.has(MAX_RECORDS_PER_SECOND_PARAM) && !jsonObj.has(MAX_BYTES_PER_SECOND_PARAM)) {
+            logger.error(Messages.getString("INVALID_JSON_MISSING_KEY", MAX_RECORDS_PER_SECOND_PARAM, jsonString)); //$NON-NLS-1$
+            return;
+        }
+        final double recordsPerSecond = jsonObj.has(MAX_RECORDS_PER_SECOND_PARAM)?
+                jsonObj.get(MAX_RECORDS_PER_SECOND_PARAM).getAsDouble(): rateLimiter.getRecordsPerSecond();
+        final double bytesPerSecond = jsonObj.has(MAX_BYTES_PER_SECOND_PARAM)?
+                jsonObj.get(MAX_BYTES_PER_SECOND_PARAM).getAsDouble(): rateLimiter.getBytesPerSecond();
+        rateLimiter.setRates(recordsPerSecond, bytesPerSecond);
+        logger.info("rate limits changed: maxRecordsPerSecond=" + recordsPerSecond + ", maxBytesPerSecond=" + bytesPerSecond); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
     /**
      * Shutdown this operator, which will interrupt the thread executing the
      * <code>produceTuples()</code> method.
@@ -740,7 +1531,12 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
      */
     public synchronized void shutdown() throws Exception {
         shutdown.set(true);
-        consumer.sendShutdownEvent(SHUTDOWN_TIMEOUT, SHUTDOWN_TIMEOUT_TIMEUNIT);
+        if (punctuationTask != null) {
+            punctuationTask.cancel(false);
+        }
+        for (KafkaConsumerClient consumer: consumers) {
+            consumer.sendShutdownEvent(SHUTDOWN_TIMEOUT, SHUTDOWN_TIMEOUT_TIMEUNIT);
+        }
 //        if (processThread != null && processThread.isAlive()) {
 //            processThread.interrupt();
 //        }
@@ -759,7 +1555,7 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
         logger.debug(">>> DRAIN"); //$NON-NLS-1$
         // When a checkpoint is to be created, the operator must stop sending tuples by pulling messages out of the messageQueue.
         // This is achieved via acquiring a permit. In the background, more messages are pushed into the queue by a receive thread
-        // incrementing the read offset.
+        // incrementing the read offset. Polling continues during drain and checkpoint, so that the queue is filled when the region resumes.
         // For every tuple that is submitted, its next offset is stored in a data structure (offset manager).
         // On checkpoint, the offset manager is saved. On reset of the CR, the consumer starts reading at these previously saved offsets,
         // reading the messages since last checkpoint again.
@@ -768,15 +1564,20 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
     @Override
     public void checkpoint(Checkpoint checkpoint) throws Exception {
         logger.debug(">>> CHECKPOINT (ckpt id=" + checkpoint.getSequenceId() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
-        consumer.sendCheckpointEvent(checkpoint); // blocks until checkpoint completes
-        consumer.sendStartPollingEvent(consumerPollTimeout); // checkpoint is done, resume polling for records
+        // the clients write their offsets one after the other into the checkpoint; reset reads them in the same order.
+        // The event threads of the clients are not involved and keep polling.
+        for (KafkaConsumerClient consumer: consumers) {
+            consumer.checkpoint(checkpoint);
+        }
     }
 
     @Override
     public void reset(Checkpoint checkpoint) throws Exception {
         logger.debug(">>> RESET (ckpt id=" + checkpoint.getSequenceId() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
-        consumer.sendResetEvent(checkpoint); // blocks until reset completes
-        consumer.sendStartPollingEvent(consumerPollTimeout); // done resetting,start polling for records
+        for (KafkaConsumerClient consumer: consumers) {
+            consumer.sendResetEvent(checkpoint); // blocks until reset completes
+        }
+        consumers.forEach(consumer -> consumer.sendStartPollingEvent(consumerPollTimeout)); // done resetting,start polling for records
 
         // latch will be null if the reset was caused
         // by another operator
@@ -787,8 +1588,10 @@ public abstract class AbstractKafkaConsumerOperator extends AbstractKafkaOperato
     @Override
     public void resetToInitialState() throws Exception {
         logger.debug(">>> RESET TO INIT..."); //$NON-NLS-1$
-        consumer.sendResetToInitEvent(); // blocks until resetToInit completes
-        consumer.sendStartPollingEvent(consumerPollTimeout); // done resettings, start polling for records
+        for (KafkaConsumerClient consumer: consumers) {
+            consumer.sendResetToInitEvent(); // blocks until resetToInit completes
+        }
+        consumers.forEach(consumer -> consumer.sendStartPollingEvent(consumerPollTimeout)); // done resettings, start polling for records
 
         // latch will be null if the reset was caused
         // by another operator
@@ -181,9 +181,18 @@ public abstract class AbstractKafkaOperator extends AbstractOperator implements
         return this.kafkaProperties;
     }
 
+    /**
+     * Converts an attribute value into the object that is passed to the Kafka serializer.
+     * RString values are passed unchanged when `type` is `RString.class`, so that their UTF-8 bytes
+     * can be used without decoding; otherwise they are converted into `java.lang.String`.
+     * @param type    the Java type that the serializer expects
+     * @param attrObj the attribute value
+     * @return the object to serialize
+     */
     protected Object toJavaPrimitveObject(Class<?> type, Object attrObj) {
     	if(attrObj instanceof RString) {
-    		attrObj = ((RString)attrObj).getString();
+    		if (type != RString.class)
+    			attrObj = ((RString)attrObj).getString();
     	} else if(attrObj instanceof Blob) {
     		attrObj = ((Blob)attrObj).getData();
     	}
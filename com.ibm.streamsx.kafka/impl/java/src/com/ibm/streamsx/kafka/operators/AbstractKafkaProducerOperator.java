@@ -6,6 +6,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.time.StopWatch;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.log4j.Logger;
 
@@ -22,12 +23,14 @@ import com.ibm.streams.operator.model.DefaultAttribute;
 import com.ibm.streams.operator.model.Parameter;
 import com.ibm.streams.operator.state.Checkpoint;
 import com.ibm.streams.operator.state.ConsistentRegionContext;
+import com.ibm.streams.operator.types.RString;
 import com.ibm.streamsx.kafka.PerformanceLevel;
 import com.ibm.streamsx.kafka.clients.producer.AtLeastOnceKafkaProducerClient;
 import com.ibm.streamsx.kafka.clients.producer.TransactionalKafkaProducerClient;
 import com.ibm.streamsx.kafka.clients.producer.KafkaProducerClient;
 import com.ibm.streamsx.kafka.i18n.Messages;
 import com.ibm.streamsx.kafka.properties.KafkaOperatorProperties;
+import com.ibm.streamsx.kafka.serialization.RStringSerializer;
 
 public abstract class AbstractKafkaProducerOperator extends AbstractKafkaOperator {
     protected static final String DEFAULT_MESSAGE_ATTR_NAME = "message"; //$NON-NLS-1$
@@ -64,6 +67,9 @@ public abstract class AbstractKafkaProducerOperator extends AbstractKafkaOperato
     private String keyAttributeName = null;
     private String partitionAttributeName = null;
     private String timestampAttributeName = null;
+    /** the types passed to the key and value serializers */
+    private Class<?> keySerializerType;
+    private Class<?> messageSerializerType;
     // AtLeastOnce as default in order to support also Kafka 0.10 out of the box in Consistent Region.
     private ConsistentRegionPolicy consistentRegionPolicy = ConsistentRegionPolicy.AtLeastOnce;
     
@@ -310,12 +316,23 @@ public abstract class AbstractKafkaProducerOperator extends AbstractKafkaOperato
         }
         
         initProducer();
+        // RStrings are passed as RString only to the serializer that the operator has selected for rstring attributes
+        keySerializerType = getSerializerType(keyType, ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG);
+        messageSerializerType = getSerializerType(messageType, ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG);
 
         registerForDataGovernance(context, topics);
 
         logger.info(">>> Operator initialized! <<<"); //$NON-NLS-1$
     }
 
+    private Class<?> getSerializerType(Class<?> attrType, String serializerConfig) {
+        if (attrType == RString.class
+                && !RStringSerializer.class.getCanonicalName().equals(getKafkaProperties().getProperty(serializerConfig))) {
+            return String.class;
+        }
+        return attrType;
+    }
+
     private void initProducer() throws Exception {
         // configure producer
         KafkaOperatorProperties props = getKafkaProperties();
@@ -362,8 +379,8 @@ public abstract class AbstractKafkaProducerOperator extends AbstractKafkaOperato
         }
 
         List<String> topicList = getTopics(tuple);
-        Object key = keyAttributeName != null ? toJavaPrimitveObject(keyType, tuple.getObject(keyAttributeName)) : null;
-        Object value = toJavaPrimitveObject(messageType, messageAttr.getValue(tuple));
+        Object key = keyAttributeName != null ? toJavaPrimitveObject(keySerializerType, tuple.getObject(keyAttributeName)) : null;
+        Object value = toJavaPrimitveObject(messageSerializerType, messageAttr.getValue(tuple));
         Integer partition = (partitionAttributeName != null) ? tuple.getInt(partitionAttributeName) : null;
         Long timestamp = (timestampAttributeName) != null ? tuple.getLong(timestampAttributeName) : null;
         
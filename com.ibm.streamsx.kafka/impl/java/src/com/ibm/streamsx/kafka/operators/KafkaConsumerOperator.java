@@ -12,7 +12,7 @@ import com.ibm.streams.operator.model.PrimitiveOperator;
 @PrimitiveOperator(name = "KafkaConsumer", namespace = "com.ibm.streamsx.kafka", description=KafkaConsumerOperator.DESC)
 @InputPorts({
 	@InputPortSet(description = "This port is used to specify the topic-partition offsets that the consumer should begin reading messages from. When this "
-			+ "port is specified, the operator will ignore the `topic`, `partition` and `startPosition` parameters. The operator will only begin "
+			+ "port is specified, the operator will ignore the `topic`, `partition`, `startPosition`, and `endPosition` parameters. The operator will only begin "
 			+ "consuming messages once a tuple is received on this port. Each tuple received on this port will cause the operator to "
 			+ "seek to the offsets for the specified topic-partitions. This works as follows: "
 			+ "\\n"
@@ -44,11 +44,33 @@ import com.ibm.streams.operator.model.PrimitiveOperator;
 			+ "\\n"
 			+ " * `rstring removeTopicPartitionMessage(rstring topic, int32 partition);` \\n" 
 			+ "\\n"  
-			+ " * `rstring removeTopicPartitionMessage(list<tuple<rstring topic, int32 partition>> topicPartitionsToRemove);`", 
+			+ " * `rstring removeTopicPartitionMessage(list<tuple<rstring topic, int32 partition>> topicPartitionsToRemove);` \\n" 
+			+ "\\n"
+			+ "The rate limits of the **maxRecordsPerSecond** and **maxBytesPerSecond** parameters can be changed at runtime "
+			+ "with the action `THROTTLE`, which does not change the assigned topic-partitions. A value less than or equal to 0 removes the limit: \\n"
+			+ "\\n"
+			+ "    {\\n"
+			+ "      \\\"action\\\" : \\\"THROTTLE\\\",\\n"
+			+ "      \\\"maxRecordsPerSecond\\\" : <number>,\\n"
+			+ "      \\\"maxBytesPerSecond\\\" : <number>\\n"
+			+ "    }\\n"
+			+ "\\n"
+			+ "The message can be created with the function `rstring createMessageThrottle(float64 maxRecordsPerSecond, float64 maxBytesPerSecond);`\\n"
+			+ "\\n"
+			+ "Instead of a JSON string, the input port can have a structured schema, which avoids creating and parsing JSON. "
+			+ "The schema must have an attribute `action` of type `rstring` or `enum {ADD, REMOVE}`, and an attribute "
+			+ "`topicPartitionOffsets` of type `list<tuple<rstring topic, int32 partition, int64 offset>>`. The type "
+			+ "`com.ibm.streamsx.kafka::TopicPartitionUpdate` can be used as the schema. The offsets are ignored for the action `REMOVE`. "
+			+ "The action `THROTTLE` is only supported with a JSON string.\\n"
+			+ "\\n"
+			+ "The operator does not wait until an update has been applied. Updates that arrive while a previous update is pending "
+			+ "are merged into one update of the assigned topic-partitions.", 
 			cardinality = 1, optional = true)})
 @OutputPorts({
         @OutputPortSet(description = "This port produces tuples based on records read from the Kafka topic(s). A tuple will be output for "
-        		+ "each record read from the Kafka topic(s).", cardinality = 1, optional = false, windowPunctuationOutputMode = WindowPunctuationOutputMode.Generating) })
+        		+ "each record read from the Kafka topic(s). When the **endPosition** parameter is specified, a final punctuation "
+        		+ "is submitted after the messages up to the end position have been submitted. Window punctuations are submitted "
+        		+ "as specified by the **punctuationMode** parameter.", cardinality = 1, optional = false, windowPunctuationOutputMode = WindowPunctuationOutputMode.Generating) })
 @Icons(location16 = "icons/KafkaConsumer_16.gif", location32 = "icons/KafkaConsumer_32.gif")
 public class KafkaConsumerOperator extends AbstractKafkaConsumerOperator {
 
@@ -125,8 +147,13 @@ public class KafkaConsumerOperator extends AbstractKafkaConsumerOperator {
     		
     		"# Committing received Kafka messages\\n" +
     		"\\n" +
-    		"As default, the operator sets the consusmer property `auto.commit.enable` to `false` and commits every "
-    		+ "received batch of messages after appending the messages to an internal queue. When users specify the value `true` for the "
+    		"As default, the operator sets the consusmer property `auto.commit.enable` to `false` and commits the offsets "
+    		+ "of the messages that have been submitted as tuples. The offsets are committed asynchronously every **commitPeriod** "
+    		+ "seconds, which defaults to 5 seconds, or after **commitCount** submitted tuples, whatever comes first. "
+    		+ "On shutdown, and when partitions are revoked during a group rebalance, the offsets are committed synchronously. "
+    		+ "Messages that have been received, but not yet been submitted, are not committed. "
+    		+ "When the operator restarts, these messages are received again (at-least-once). "
+    		+ "When users specify the value `true` for the "
     		+ "`auto.commit.enable` property, the operator uses the auto-commit function of the Kafka client.\\n" +
     		"\\n" +
     		
@@ -148,8 +175,9 @@ public class KafkaConsumerOperator extends AbstractKafkaConsumerOperator {
     		"\\n" +  //$NON-NLS-1$
     		"The `KafkaConsumer` operator can participate in a consistent region. The operator " //$NON-NLS-1$
     		+ "can be the start of a consistent region. Both operator driven and periodic checkpointing " //$NON-NLS-1$
-    		+ "are supported. If using operator driven, the **triggerCount** parameter must be set to " //$NON-NLS-1$
-    		+ "indicate how often the operator should initiate a consistent region. On checkpoint, the " //$NON-NLS-1$
+    		+ "are supported. If using operator driven, at least one of the **triggerCount**, **triggerPeriod**, " //$NON-NLS-1$
+    		+ "and **triggerBytes** parameters must be set to indicate how often the operator should initiate " //$NON-NLS-1$
+    		+ "a consistent region; when more than one is set, the condition that is met first triggers the region. On checkpoint, the " //$NON-NLS-1$
     		+ "operator will save the last offset for each topic-partition that it is assigned to. In the " //$NON-NLS-1$
     		+ "event of a reset, the operator will seek to the saved offset for each topic-partition and " //$NON-NLS-1$
     		+ "begin consuming messages from that point." + //$NON-NLS-1$
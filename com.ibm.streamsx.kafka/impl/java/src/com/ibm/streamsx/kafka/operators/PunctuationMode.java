@@ -0,0 +1,15 @@
+package com.ibm.streamsx.kafka.operators;
+
+/**
+ * Specifies when the KafkaConsumer operator submits window punctuations.
+ */
+public enum PunctuationMode {
+    /** no window punctuations */
+    None,
+    /** after the messages of each batch polled from Kafka */
+    Batch,
+    /** after every N tuples */
+    Count,
+    /** periodically */
+    Time;
+}
@@ -0,0 +1,118 @@
+package com.ibm.streamsx.kafka.operators;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of submitted records and bytes with two token buckets.
+ *
+ * Each bucket is refilled continuously with its rate and holds at most the tokens of one second, which is the allowed burst.
+ * A caller takes the tokens for a record and waits when a bucket is in debt, until the debt would be repaid.
+ * Callers that must not block use {@link #tryAcquire(long)}, which takes the tokens only when they are available,
+ * or {@link #take(long)}, which returns the wait time instead of waiting.
+ * The rates can be changed at any time. The limiter can be used by multiple threads.
+ */
+class RateLimiter {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** `true` when at least one rate is limited; tested without lock for the unlimited case */
+    private volatile boolean limited = false;
+    private double recordsPerSecond = 0.0;
+    private double bytesPerSecond = 0.0;
+    private double recordTokens = 0.0;
+    private double byteTokens = 0.0;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * Sets the rates. A value less than or equal to 0 removes the limit.
+     * @param recordsPerSecond the maximum number of records per second
+     * @param bytesPerSecond   the maximum number of bytes per second
+     */
+    synchronized void setRates(double recordsPerSecond, double bytesPerSecond) {
+        refill(System.nanoTime());
+        this.recordsPerSecond = Math.max(0.0, recordsPerSecond);
+        this.bytesPerSecond = Math.max(0.0, bytesPerSecond);
+        // start with a full bucket
+        this.recordTokens = this.recordsPerSecond;
+        this.byteTokens = this.bytesPerSecond;
+        this.limited = this.recordsPerSecond > 0.0 || this.bytesPerSecond > 0.0;
+    }
+
+    synchronized double getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    synchronized double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Takes the tokens for one record, and waits if the rates are exceeded.
+     * @param bytes the size of the record in bytes
+     * @throws InterruptedException the calling thread has been interrupted while waiting
+     */
+    void acquire(long bytes) throws InterruptedException {
+        final long waitNanos = take(bytes);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes the tokens for one record without waiting. A bucket can go into debt.
+     * The caller must wait the returned time before it takes the tokens for the next record,
+     * which it can do after it has released locks or permits.
+     * @param bytes the size of the record in bytes
+     * @return the time in nanoseconds until the debt is repaid, 0 if no bucket is in debt
+     */
+    long take(long bytes) {
+        if (!limited) return 0;
+        synchronized (this) {
+            refill(System.nanoTime());
+            double wait = 0.0;
+            if (recordsPerSecond > 0.0) {
+                recordTokens -= 1.0;
+                if (recordTokens < 0.0) wait = -recordTokens / recordsPerSecond;
+            }
+            if (bytesPerSecond > 0.0) {
+                byteTokens -= bytes;
+                if (byteTokens < 0.0) wait = Math.max(wait, -byteTokens / bytesPerSecond);
+            }
+            return (long) (wait * NANOS_PER_SECOND);
+        }
+    }
+
+    /**
+     * Takes the tokens for one record if they are available, without waiting.
+     * A record larger than a bucket can be taken when the bucket is full; the bucket is in debt then.
+     * @param bytes the size of the record in bytes
+     * @return 0 if the tokens have been taken, otherwise the time in nanoseconds after which the tokens are available
+     */
+    long tryAcquire(long bytes) {
+        if (!limited) return 0;
+        synchronized (this) {
+            refill(System.nanoTime());
+            double wait = 0.0;
+            if (recordsPerSecond > 0.0 && recordTokens < Math.min(1.0, recordsPerSecond)) {
+                wait = (Math.min(1.0, recordsPerSecond) - recordTokens) / recordsPerSecond;
+            }
+            if (bytesPerSecond > 0.0 && byteTokens < Math.min(bytes, bytesPerSecond)) {
+                wait = Math.max(wait, (Math.min(bytes, bytesPerSecond) - byteTokens) / bytesPerSecond);
+            }
+            if (wait > 0.0) {
+                // at least one nanosecond, so that a wait time is never mistaken for success
+                return Math.max(1l, (long) Math.ceil(wait * NANOS_PER_SECOND));
+            }
+            if (recordsPerSecond > 0.0) recordTokens -= 1.0;
+            if (bytesPerSecond > 0.0) byteTokens -= bytes;
+            return 0;
+        }
+    }
+
+    private void refill(long now) {
+        final double elapsedSeconds = (now - lastRefillNanos) / NANOS_PER_SECOND;
+        lastRefillNanos = now;
+        recordTokens = Math.min(recordsPerSecond, recordTokens + elapsedSeconds * recordsPerSecond);
+        byteTokens = Math.min(bytesPerSecond, byteTokens + elapsedSeconds * bytesPerSecond);
+    }
+}
@@ -0,0 +1,168 @@
+package com.ibm.streamsx.kafka.operators;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.RString;
+import com.ibm.streams.operator.types.ValueFactory;
+import com.ibm.streamsx.kafka.i18n.Messages;
+
+/**
+ * Converts Kafka consumer records into output tuples.
+ *
+ * The attribute indexes and the setters for the attribute types are resolved once from the output schema
+ * when the converter is created, so that converting a record does neither look up attributes by name
+ * nor test the type of the values. RString objects for topic names are cached.
+ */
+class RecordTupleConverter {
+
+    /**
+     * Sets a value into an output tuple attribute.
+     */
+    @FunctionalInterface
+    private interface AttributeSetter {
+        void set(OutputTuple tuple, Object value) throws Exception;
+    }
+
+    private final AttributeSetter messageSetter;
+    private final AttributeSetter keySetter;
+    private final int topicIndex;
+    private final boolean topicIsRString;
+    private final int offsetIndex;
+    private final int partitionIndex;
+    private final int timestampIndex;
+
+    private final Map<String, RString> topicCache = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new converter for the given output schema.
+     * Attribute names of non-existing attributes are ignored, except the message attribute name.
+     * @param schema               the schema of the output port
+     * @param messageAttrName      the name of the message attribute
+     * @param keyAttrName          the name of the key attribute
+     * @param topicAttrName        the name of the topic attribute
+     * @param offsetAttrName       the name of the offset attribute
+     * @param partitionAttrName    the name of the partition attribute
+     * @param timestampAttrName    the name of the message timestamp attribute
+     */
+    RecordTupleConverter(StreamSchema schema, String messageAttrName, String keyAttrName, String topicAttrName,
+            String offsetAttrName, String partitionAttrName, String timestampAttrName) {
+        this.messageSetter = createSetter(schema.getAttribute(messageAttrName));
+        final Attribute keyAttr = schema.getAttribute(keyAttrName);
+        this.keySetter = keyAttr == null? null: createSetter(keyAttr);
+        final Attribute topicAttr = schema.getAttribute(topicAttrName);
+        this.topicIndex = topicAttr == null? -1: topicAttr.getIndex();
+        this.topicIsRString = topicAttr != null && topicAttr.getType().getMetaType() == MetaType.RSTRING;
+        this.offsetIndex = attributeIndex(schema, offsetAttrName);
+        this.partitionIndex = attributeIndex(schema, partitionAttrName);
+        this.timestampIndex = attributeIndex(schema, timestampAttrName);
+    }
+
+    /**
+     * Sets the attributes of the tuple from the record.
+     * Message and key attributes are left untouched when the record's value or key is `null`.
+     * @param record the consumer record
+     * @param tuple  the output tuple
+     * @throws Exception the value or key cannot be set into the tuple
+     */
+    void populate(ConsumerRecord<?, ?> record, OutputTuple tuple) throws Exception {
+        final Object value = record.value();
+        if (value != null) {
+            messageSetter.set(tuple, value);
+        }
+        if (keySetter != null) {
+            final Object key = record.key();
+            if (key != null) {
+                keySetter.set(tuple, key);
+            }
+        }
+        if (topicIndex >= 0) {
+            if (topicIsRString) {
+                tuple.setObject(topicIndex, topicCache.computeIfAbsent(record.topic(), RString::new));
+            }
+            else {
+                tuple.setString(topicIndex, record.topic());
+            }
+        }
+        if (offsetIndex >= 0) {
+            tuple.setLong(offsetIndex, record.offset());
+        }
+        if (partitionIndex >= 0) {
+            tuple.setInt(partitionIndex, record.partition());
+        }
+        if (timestampIndex >= 0) {
+            tuple.setLong(timestampIndex, record.timestamp());
+        }
+    }
+
+    private static int attributeIndex(StreamSchema schema, String attrName) {
+        final Attribute attr = schema.getAttribute(attrName);
+        return attr == null? -1: attr.getIndex();
+    }
+
+    /**
+     * Creates a setter for the attribute type. The deserializers are selected from the same attribute type,
+     * so that the values have the matching Java types.
+     * @param attr the attribute
+     * @return the setter
+     */
+    private static AttributeSetter createSetter(Attribute attr) {
+        final int index = attr.getIndex();
+        final String attrName = attr.getName();
+        switch (attr.getType().getMetaType()) {
+        case RSTRING:
+            // RStrings from the RStringDeserializer are set without transcoding; custom deserializers may return Strings
+            return (tuple, value) -> {
+                if (value instanceof RString) tuple.setObject(index, value);
+                else tuple.setString(index, (String) value);
+            };
+        case USTRING:
+            return (tuple, value) -> tuple.setString(index, (String) value);
+        case INT32:
+        case UINT32:
+            // the Java type of uint32 is Integer, the value is set bitwise
+            return (tuple, value) -> tuple.setInt(index, (Integer) value);
+        case INT64:
+        case UINT64:
+            return (tuple, value) -> tuple.setLong(index, (Long) value);
+        case FLOAT32:
+            return (tuple, value) -> tuple.setFloat(index, (Float) value);
+        case FLOAT64:
+            return (tuple, value) -> tuple.setDouble(index, (Double) value);
+        case INT8:
+            return (tuple, value) -> tuple.setByte(index, (Byte) value);
+        case BLOB:
+            return (tuple, value) -> tuple.setBlob(index, ValueFactory.newBlob((byte[]) value));
+        default:
+            // types without a dedicated setter are set by the Java type of the value
+            return (tuple, value) -> setByValueType(tuple, index, attrName, value);
+        }
+    }
+
+    private static void setByValueType(OutputTuple tuple, int index, String attrName, Object value) throws Exception {
+        if (value instanceof RString)
+            tuple.setObject(index, value);
+        else if (value instanceof String)
+            tuple.setString(index, (String) value);
+        else if (value instanceof Integer)
+            tuple.setInt(index, (Integer) value);
+        else if (value instanceof Double)
+            tuple.setDouble(index, (Double) value);
+        else if (value instanceof Float)
+            tuple.setFloat(index, (Float) value);
+        else if (value instanceof Long)
+            tuple.setLong(index, (Long) value);
+        else if (value instanceof Byte)
+            tuple.setByte(index, (Byte) value);
+        else if (value instanceof byte[])
+            tuple.setBlob(index, ValueFactory.newBlob((byte[]) value));
+        else
+            throw new Exception(Messages.getString("UNSUPPORTED_TYPE_EXCEPTION", (value.getClass().getTypeName()), attrName)); //$NON-NLS-1$
+    }
+}
@@ -1,8 +1,12 @@
 package com.ibm.streamsx.kafka.serialization;
 
+import java.util.concurrent.TimeUnit;
+
 import org.apache.kafka.common.serialization.FloatDeserializer;
 import org.apache.log4j.Logger;
 
+import com.ibm.streamsx.kafka.LogThrottle;
+
 /**
  * This class extends the `org.apache.kafka.common.serialization.DoubleDeserializer` 
  * so that its {@link #deserialize(String, byte[])} function does not throw a `SerializationException` in case of malformed data.
@@ -13,6 +17,8 @@ import org.apache.log4j.Logger;
 public class FloatDeserializerExt extends FloatDeserializer {
 
     private static final Logger tracer = Logger.getLogger(FloatDeserializerExt.class);
+    /** limits the logging when many records are malformed */
+    private static final LogThrottle logThrottle = new LogThrottle(10, TimeUnit.SECONDS);
     /**
      * Constructs a new DoubleDeserializerExt. The class must have an argument-less constructor.
      */
@@ -37,7 +43,11 @@ public class FloatDeserializerExt extends FloatDeserializer {
             return super.deserialize (topic, data);
         }
         catch (org.apache.kafka.common.errors.SerializationException e) {
-            tracer.error ("failed to deserialize data into Float value from topic '" + topic + "': " + e.getLocalizedMessage(), e);
+            final long nSuppressed = logThrottle.tryLog();
+            if (nSuppressed >= 0) {
+                tracer.error ("failed to deserialize data into Float value from topic '" + topic + "': " + e.getLocalizedMessage()
+                        + LogThrottle.suppressedSuffix(nSuppressed), e);
+            }
             return null;
         }
     }
@@ -0,0 +1,67 @@
+package com.ibm.streamsx.kafka.serialization;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Deserializer;
+
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * This class deserializes UTF-8 encoded data into `com.ibm.streams.operator.types.RString` objects.
+ * As the data are used as the UTF-8 bytes of the RString, the data are not decoded into a `java.lang.String`.
+ * When an encoding other than UTF-8 is configured via `key.deserializer.encoding`, `value.deserializer.encoding`,
+ * or `deserializer.encoding`, the data are transcoded to UTF-8.
+ * The Kafka client requires that the class has an argument-less public constructor.
+ *
+ * @since Toolkit v1.3.3
+ */
+public class RStringDeserializer implements Deserializer<RString> {
+
+    /** the encoding of the data, `null` for UTF-8 */
+    private Charset encoding = null;
+
+    /**
+     * Constructs a new RStringDeserializer. The class must have an argument-less constructor.
+     */
+    public RStringDeserializer() {
+        super();
+    }
+
+    /**
+     * Configures the encoding of the data in the same way as the `org.apache.kafka.common.serialization.StringDeserializer`.
+     * @see org.apache.kafka.common.serialization.Deserializer#configure(java.util.Map, boolean)
+     */
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object encodingValue = configs.get(isKey ? "key.deserializer.encoding" : "value.deserializer.encoding"); //$NON-NLS-1$ //$NON-NLS-2$
+        if (encodingValue == null)
+            encodingValue = configs.get("deserializer.encoding"); //$NON-NLS-1$
+        if (encodingValue instanceof String) {
+            final Charset charset = Charset.forName((String) encodingValue);
+            encoding = charset.equals(StandardCharsets.UTF_8)? null: charset;
+        }
+    }
+
+    /**
+     * De-serializes a byte array into a value object of `com.ibm.streams.operator.types.RString` type.
+     * 
+     * @param topic  the topic
+     * @param data   the serialized data
+     * 
+     * @return The value object or `null` if the data are `null`
+     */
+    @Override
+    public RString deserialize(String topic, byte[] data) {
+        if (data == null)
+            return null;
+        if (encoding == null)
+            return new RString(data);
+        return new RString(new String(data, encoding).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+    }
+}
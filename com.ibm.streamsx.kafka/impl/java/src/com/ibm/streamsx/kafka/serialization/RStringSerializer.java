@@ -0,0 +1,72 @@
+package com.ibm.streamsx.kafka.serialization;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * This class serializes `com.ibm.streams.operator.types.RString` objects by using their UTF-8 bytes,
+ * so that the data are not encoded from a `java.lang.String`. `java.lang.String` objects are also accepted
+ * and encoded in UTF-8.
+ * When an encoding other than UTF-8 is configured via `key.serializer.encoding`, `value.serializer.encoding`,
+ * or `serializer.encoding`, the data are transcoded into this encoding.
+ * The Kafka client requires that the class has an argument-less public constructor.
+ *
+ * @since Toolkit v1.3.3
+ */
+public class RStringSerializer implements Serializer<Object> {
+
+    /** the encoding of the serialized data, `null` for UTF-8 */
+    private Charset encoding = null;
+
+    /**
+     * Constructs a new RStringSerializer. The class must have an argument-less constructor.
+     */
+    public RStringSerializer() {
+        super();
+    }
+
+    /**
+     * Configures the encoding of the data in the same way as the `org.apache.kafka.common.serialization.StringSerializer`.
+     * @see org.apache.kafka.common.serialization.Serializer#configure(java.util.Map, boolean)
+     */
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object encodingValue = configs.get(isKey ? "key.serializer.encoding" : "value.serializer.encoding"); //$NON-NLS-1$ //$NON-NLS-2$
+        if (encodingValue == null)
+            encodingValue = configs.get("serializer.encoding"); //$NON-NLS-1$
+        if (encodingValue instanceof String) {
+            final Charset charset = Charset.forName((String) encodingValue);
+            encoding = charset.equals(StandardCharsets.UTF_8)? null: charset;
+        }
+    }
+
+    /**
+     * Serializes an RString or a String into a byte array.
+     * 
+     * @param topic  the topic
+     * @param data   the RString or String object
+     * 
+     * @return The bytes in the configured encoding, UTF-8 by default, or `null` if data is `null`
+     */
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data == null)
+            return null;
+        if (encoding == null) {
+            if (data instanceof RString)
+                return ((RString) data).getData();
+            return data.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        final String s = data instanceof RString? ((RString) data).getString(): data.toString();
+        return s.getBytes(encoding);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,77 @@
+package com.ibm.streamsx.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the LogThrottle, which logs at most one message per interval and counts the suppressed messages.
+ */
+public class LogThrottleTest {
+
+	@Test
+	public void firstMessageIsLogged() {
+		LogThrottle throttle = new LogThrottle(1, TimeUnit.HOURS);
+		Assert.assertEquals(0, throttle.tryLog());
+		Assert.assertEquals(-1, throttle.tryLog());
+	}
+
+	@Test
+	public void suppressedMessagesAreCounted() throws Exception {
+		LogThrottle throttle = new LogThrottle(50, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(0, throttle.tryLog());
+		for (int i = 0; i < 5; ++i) {
+			Assert.assertEquals(-1, throttle.tryLog());
+		}
+		Thread.sleep(100);
+		Assert.assertEquals(5, throttle.tryLog());
+		Assert.assertEquals(-1, throttle.tryLog());
+		Thread.sleep(100);
+		// the count starts again after a logged message
+		Assert.assertEquals(1, throttle.tryLog());
+	}
+
+	@Test
+	public void oneMessagePerIntervalWithConcurrentThreads() throws Exception {
+		final int nThreads = 8;
+		final int nCalls = 10000;
+		final LogThrottle throttle = new LogThrottle(1, TimeUnit.HOURS);
+		final AtomicLong nLogged = new AtomicLong();
+		final AtomicLong nSuppressed = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < nThreads; ++t) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < nCalls; ++i) {
+					if (throttle.tryLog() >= 0) nLogged.incrementAndGet();
+					else nSuppressed.incrementAndGet();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		Assert.assertEquals(1, nLogged.get());
+		Assert.assertEquals(nThreads * nCalls - 1, nSuppressed.get());
+	}
+
+	@Test
+	public void suppressedSuffix() {
+		Assert.assertEquals("", LogThrottle.suppressedSuffix(0));
+		Assert.assertEquals("", LogThrottle.suppressedSuffix(-1));
+		Assert.assertEquals(" (3 similar messages suppressed)", LogThrottle.suppressedSuffix(3));
+	}
+}
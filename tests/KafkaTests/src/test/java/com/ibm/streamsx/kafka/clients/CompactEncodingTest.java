@@ -0,0 +1,86 @@
+package com.ibm.streamsx.kafka.clients;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the variable length encoding of the compact offset checkpoint format.
+ */
+public class CompactEncodingTest {
+
+	private static final long[] VALUES = {0, 1, 127, 128, 255, 300, 16383, 16384, Integer.MAX_VALUE, 1L << 35, 1234567890123L, Long.MAX_VALUE};
+
+	@Test
+	public void varLongRoundTrip() {
+		CompactEncoding.Writer writer = new CompactEncoding.Writer(0);
+		for (long v: VALUES) {
+			writer.writeVarLong(v);
+		}
+		CompactEncoding.Reader reader = new CompactEncoding.Reader(writer.toByteArray());
+		for (long v: VALUES) {
+			Assert.assertEquals(v, reader.readVarLong());
+		}
+	}
+
+	@Test
+	public void varLongSizes() {
+		// the encoding is part of the checkpoint format; the sizes must not change
+		Assert.assertArrayEquals(new byte[] {0}, encode(0));
+		Assert.assertArrayEquals(new byte[] {0x7F}, encode(127));
+		Assert.assertArrayEquals(new byte[] {(byte) 0x80, 0x01}, encode(128));
+		Assert.assertArrayEquals(new byte[] {(byte) 0xAC, 0x02}, encode(300));
+		Assert.assertEquals(9, encode(Long.MAX_VALUE).length);
+	}
+
+	private static byte[] encode(long v) {
+		CompactEncoding.Writer writer = new CompactEncoding.Writer(0);
+		writer.writeVarLong(v);
+		return writer.toByteArray();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeValueIsRejected() {
+		new CompactEncoding.Writer(0).writeVarLong(-1);
+	}
+
+	@Test
+	public void stringRoundTrip() {
+		CompactEncoding.Writer writer = new CompactEncoding.Writer(1);
+		String[] strings = {"", "topic", "t\u00F6pic-\u6F22\u5B57", new String(new char[300]).replace('\0', 'x')};
+		for (String s: strings) {
+			writer.writeString(s);
+		}
+		writer.writeByte(0xFF);
+		CompactEncoding.Reader reader = new CompactEncoding.Reader(writer.toByteArray());
+		for (String s: strings) {
+			Assert.assertEquals(s, reader.readString());
+		}
+		Assert.assertEquals(0xFF, reader.readByte());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void truncatedVarLongIsRejected() {
+		new CompactEncoding.Reader(new byte[] {(byte) 0x80}).readVarLong();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void truncatedStringIsRejected() {
+		new CompactEncoding.Reader(new byte[] {5, 'a', 'b'}).readString();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void overlongVarLongIsRejected() {
+		byte[] data = new byte[11];
+		Arrays.fill(data, (byte) 0x80);
+		new CompactEncoding.Reader(data).readVarLong();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void varIntOutOfRangeIsRejected() {
+		CompactEncoding.Writer writer = new CompactEncoding.Writer(0);
+		writer.writeVarLong(Integer.MAX_VALUE + 1L);
+		new CompactEncoding.Reader(writer.toByteArray()).readVarInt();
+	}
+}
@@ -0,0 +1,160 @@
+package com.ibm.streamsx.kafka.clients;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the checkpoint formats of the OffsetManager: the compact binary format, the delta format,
+ * and the Java serialized form written by the toolkit versions before the compact format.
+ */
+public class OffsetManagerFormatTest {
+
+	/**
+	 * Java serialized OffsetManager created with the classes of the baseline version (HashMap based TopicManager)
+	 * with the state of {@link #expectedBaselineOffsets()}.
+	 */
+	private static final String BASELINE_RESOURCE = "baseline-offset-manager.ser";
+
+	private static Map<TopicPartition, Long> expectedBaselineOffsets() {
+		Map<TopicPartition, Long> offsets = new HashMap<>();
+		offsets.put(new TopicPartition("orders", 0), 0L);
+		offsets.put(new TopicPartition("orders", 1), 127L);
+		offsets.put(new TopicPartition("orders", 2), 1234567890123L);
+		offsets.put(new TopicPartition("events", 5), 42L);
+		offsets.put(new TopicPartition("events", 9), 7L);
+		return offsets;
+	}
+
+	private static byte[] readBaseline() throws Exception {
+		try (InputStream in = OffsetManagerFormatTest.class.getResourceAsStream(BASELINE_RESOURCE)) {
+			Assert.assertNotNull("resource not found: " + BASELINE_RESOURCE, in);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[1024];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	private static OffsetManager createOffsetManager() throws Exception {
+		OffsetManager offsetManager = new OffsetManager(null);
+		offsetManager.addTopic("orders", Arrays.asList(new TopicPartition("orders", 0), new TopicPartition("orders", 1), new TopicPartition("orders", 2)));
+		offsetManager.addTopic("events", Arrays.asList(new TopicPartition("events", 5)));
+		offsetManager.savePosition("orders", 0, 0L);
+		offsetManager.savePosition("orders", 1, 127L);
+		offsetManager.savePosition("orders", 2, 1234567890123L);
+		offsetManager.savePosition("events", 5, 42L);
+		offsetManager.savePosition("events", 9, 7L);
+		return offsetManager;
+	}
+
+	private static byte[] javaSerialize(Object o) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+			out.writeObject(o);
+		}
+		return bos.toByteArray();
+	}
+
+	private static Object javaDeserialize(byte[] data) throws Exception {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+			return in.readObject();
+		}
+	}
+
+	@Test
+	public void compactRoundTrip() throws Exception {
+		OffsetManager offsetManager = createOffsetManager();
+		OffsetManager restored = OffsetManager.fromByteArray(offsetManager.toByteArray());
+		Assert.assertEquals(expectedBaselineOffsets(), restored.getOffsetMap());
+		Assert.assertEquals(-1, restored.getOffset("events", 6));
+		// the restored state is writable and grows
+		restored.savePosition("events", 100, 1L);
+		Assert.assertEquals(1, restored.getOffset("events", 100));
+	}
+
+	@Test
+	public void emptyRoundTrip() throws Exception {
+		OffsetManager restored = OffsetManager.fromByteArray(new OffsetManager(null).toByteArray());
+		Assert.assertTrue(restored.getOffsetMap().isEmpty());
+		Assert.assertTrue(restored.getTopics().isEmpty());
+	}
+
+	@Test
+	public void compactFormatIsSmallerThanJavaSerialization() throws Exception {
+		OffsetManager offsetManager = createOffsetManager();
+		Assert.assertTrue(offsetManager.toByteArray().length * 5 < javaSerialize(offsetManager).length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownVersionIsRejected() {
+		OffsetManager.fromByteArray(new byte[] {99, 0});
+	}
+
+	@Test
+	public void baselineCheckpointFromByteArray() throws Exception {
+		// the JCP control variable and byte[] checkpoints of previous versions contain the Java serialized form
+		OffsetManager restored = OffsetManager.fromByteArray(readBaseline());
+		Assert.assertEquals(expectedBaselineOffsets(), restored.getOffsetMap());
+		restored.savePosition("orders", 1, 200L);
+		Assert.assertEquals(200, restored.getOffset("orders", 1));
+		restored.addTopic("new", Arrays.asList(new TopicPartition("new", 0)));
+		Assert.assertTrue(restored.hasTopic("new"));
+	}
+
+	@Test
+	public void baselineCheckpointFromObjectStream() throws Exception {
+		// checkpoints of previous versions contain the OffsetManager object
+		OffsetManager restored = (OffsetManager) javaDeserialize(readBaseline());
+		Assert.assertEquals(expectedBaselineOffsets(), restored.getOffsetMap());
+		Assert.assertEquals(OffsetManager.fromByteArray(restored.toByteArray()).getOffsetMap(), restored.getOffsetMap());
+	}
+
+	@Test
+	public void javaSerializationRoundTrip() throws Exception {
+		// the Java serialized form is kept compatible, so that previous versions can read it after a downgrade
+		OffsetManager restored = (OffsetManager) javaDeserialize(javaSerialize(createOffsetManager()));
+		Assert.assertEquals(expectedBaselineOffsets(), restored.getOffsetMap());
+	}
+
+	@Test
+	public void deltaRoundTrip() throws Exception {
+		OffsetManager base = OffsetManager.fromByteArray(createOffsetManager().toByteArray());
+		OffsetManager current = OffsetManager.fromByteArray(base.toByteArray());
+		current.savePosition("orders", 1, 500L);
+		current.savePosition("events", 12, 3L);
+		current.addTopic("added", Arrays.asList(new TopicPartition("added", 0)));
+		current.savePosition("added", 0, 9L);
+
+		byte[] delta = current.toDeltaByteArray(base);
+		Assert.assertTrue(delta.length < current.toByteArray().length);
+		OffsetManager restored = OffsetManager.fromDeltaByteArray(base, delta);
+		Assert.assertEquals(current.getOffsetMap(), restored.getOffsetMap());
+		// the base is not modified
+		Assert.assertEquals(expectedBaselineOffsets(), base.getOffsetMap());
+	}
+
+	@Test
+	public void deltaWithoutChanges() throws Exception {
+		OffsetManager base = createOffsetManager();
+		OffsetManager restored = OffsetManager.fromDeltaByteArray(base, base.toDeltaByteArray(base));
+		Assert.assertEquals(base.getOffsetMap(), restored.getOffsetMap());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void deltaWithFullFormatIsRejected() throws Exception {
+		OffsetManager.fromDeltaByteArray(createOffsetManager(), createOffsetManager().toByteArray());
+	}
+}
@@ -0,0 +1,197 @@
+package com.ibm.streamsx.kafka.clients;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the TopicManager: concurrent writes without lock while the offsets array grows,
+ * and compatibility of the Java serialized form with the TopicManager of previous versions.
+ */
+public class TopicManagerTest {
+
+	private static final String BASELINE_RESOURCE = "baseline-offset-manager.ser";
+
+	/*
+	 * ObjectInputStream that remembers the class descriptors read from the stream
+	 */
+	private static class DescriptorCapturingInputStream extends ObjectInputStream {
+		private final Map<String, ObjectStreamClass> descriptors = new HashMap<>();
+
+		DescriptorCapturingInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			ObjectStreamClass desc = super.readClassDescriptor();
+			descriptors.put(desc.getName(), desc);
+			return desc;
+		}
+	}
+
+	private static ObjectStreamClass readTopicManagerDescriptor(InputStream in) throws Exception {
+		try (DescriptorCapturingInputStream ois = new DescriptorCapturingInputStream(in)) {
+			ois.readObject();
+			ObjectStreamClass desc = ois.descriptors.get(TopicManager.class.getName());
+			Assert.assertNotNull("no TopicManager in the stream", desc);
+			return desc;
+		}
+	}
+
+	private static List<String> fieldSignatures(ObjectStreamClass desc) {
+		List<String> signatures = new ArrayList<>();
+		for (ObjectStreamField f: desc.getFields()) {
+			signatures.add(f.getName() + ":" + f.getTypeString());
+		}
+		return signatures;
+	}
+
+	private static byte[] javaSerialize(Object o) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+			out.writeObject(o);
+		}
+		return bos.toByteArray();
+	}
+
+	private static TopicManager createTopicManager() {
+		return new TopicManager("orders", Arrays.asList(new TopicPartition("orders", 0), new TopicPartition("orders", 1)), null);
+	}
+
+	@Test
+	public void concurrentWritesWhileGrowing() throws Exception {
+		final int nThreads = 4;
+		final int nPartitionsPerThread = 500;
+		final TopicManager topicManager = createTopicManager();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < nThreads; ++t) {
+			final int thread = t;
+			Thread writer = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				// every thread writes its own partitions, interleaved with the other threads,
+				// so that the offsets array grows while the other threads write
+				for (int i = 0; i < nPartitionsPerThread; ++i) {
+					final int partition = i * nThreads + thread;
+					topicManager.setOffset(partition, partition + 1000L);
+				}
+			});
+			threads.add(writer);
+			writer.start();
+		}
+		start.countDown();
+		for (Thread t: threads) {
+			t.join();
+		}
+		Map<Integer, Long> offsetMap = topicManager.getOffsetMap();
+		Assert.assertEquals(nThreads * nPartitionsPerThread, offsetMap.size());
+		for (int partition = 0; partition < nThreads * nPartitionsPerThread; ++partition) {
+			Assert.assertEquals("partition " + partition, Long.valueOf(partition + 1000L), topicManager.getOffset(partition));
+		}
+	}
+
+	@Test
+	public void latestWriteIsKeptWhileGrowing() throws Exception {
+		// a store into the old array during a concurrent growth must not be replaced with the previous value
+		final int maxPartition = 4000;
+		for (int round = 0; round < 200; ++round) {
+			final TopicManager topicManager = createTopicManager();
+			final CountDownLatch start = new CountDownLatch(1);
+			final long nWrites = 5000;
+			Thread writer = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (long offset = 0; offset < nWrites; ++offset) {
+					topicManager.setOffset(0, offset);
+				}
+			});
+			Thread grower = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				// the array doubles, so that it is replaced about ten times
+				for (int partition = 2; partition < maxPartition; ++partition) {
+					topicManager.setOffset(partition, partition);
+				}
+			});
+			writer.start();
+			grower.start();
+			start.countDown();
+			writer.join();
+			grower.join();
+			Assert.assertEquals("round " + round, Long.valueOf(nWrites - 1), topicManager.getOffset(0));
+			Assert.assertEquals(maxPartition - 2, topicManager.getOffsetMap().size() - 1);
+		}
+	}
+
+	@Test
+	public void getOffsetOfUnmappedPartition() {
+		TopicManager topicManager = createTopicManager();
+		topicManager.setOffset(1, 5L);
+		Assert.assertNull(topicManager.getOffset(0));
+		Assert.assertNull(topicManager.getOffset(100));
+		Assert.assertNull(topicManager.getOffset(-1));
+		Assert.assertFalse(topicManager.containsPartition(0));
+		Assert.assertTrue(topicManager.containsPartition(1));
+		Assert.assertEquals(Long.valueOf(5L), topicManager.getOffset(1));
+	}
+
+	@Test
+	public void serializedFormMatchesBaseline() throws Exception {
+		// previous versions read a TopicManager written by this version when the class descriptors are compatible:
+		// same serialVersionUID and same serialized fields
+		ObjectStreamClass baseline;
+		try (InputStream in = TopicManagerTest.class.getResourceAsStream(BASELINE_RESOURCE)) {
+			Assert.assertNotNull("resource not found: " + BASELINE_RESOURCE, in);
+			baseline = readTopicManagerDescriptor(in);
+		}
+		TopicManager topicManager = createTopicManager();
+		topicManager.setOffset(1, 127L);
+		ObjectStreamClass current = readTopicManagerDescriptor(new ByteArrayInputStream(javaSerialize(topicManager)));
+		Assert.assertEquals(baseline.getSerialVersionUID(), current.getSerialVersionUID());
+		Assert.assertEquals(fieldSignatures(baseline), fieldSignatures(current));
+	}
+
+	@Test
+	public void javaSerializationRoundTrip() throws Exception {
+		TopicManager topicManager = createTopicManager();
+		topicManager.setOffset(1, 127L);
+		topicManager.setOffset(7, 42L);
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaSerialize(topicManager)))) {
+			TopicManager restored = (TopicManager) in.readObject();
+			Map<Integer, Long> expected = new HashMap<>();
+			expected.put(1, 127L);
+			expected.put(7, 42L);
+			Assert.assertEquals(expected, restored.getOffsetMap());
+			Assert.assertEquals("orders", restored.getTopic());
+			// the restored instance grows
+			restored.setOffset(20, 1L);
+			Assert.assertEquals(Long.valueOf(1L), restored.getOffset(20));
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Unit tests for the CommitManager, which commits the offsets of submitted records.
+ */
+public class CommitManagerTest {
+
+	private static final TopicPartition TP0 = new TopicPartition("test", 0);
+	private static final TopicPartition TP1 = new TopicPartition("test", 1);
+	private static final List<TopicPartition> ASSIGNMENT = Arrays.asList(TP0, TP1);
+
+	private MockConsumer<byte[], byte[]> consumer;
+
+	@Before
+	public void setUp() {
+		consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+		consumer.assign(ASSIGNMENT);
+	}
+
+	private static long committed(MockConsumer<?, ?> consumer, TopicPartition tp) {
+		return consumer.committed(tp) == null? -1: consumer.committed(tp).offset();
+	}
+
+	@Test
+	public void commitIsDueAfterCommitCount() {
+		CommitManager commitManager = new CommitManager(3, Long.MAX_VALUE);
+		commitManager.setAssignment(ASSIGNMENT);
+		Assert.assertFalse(commitManager.isCommitDue());
+		commitManager.recordSubmitted("test", 0, 10);
+		commitManager.recordSubmitted("test", 0, 11);
+		Assert.assertFalse(commitManager.isCommitDue());
+		commitManager.recordSubmitted("test", 1, 5);
+		Assert.assertTrue(commitManager.isCommitDue());
+		commitManager.commitAsync(consumer);
+		Assert.assertFalse(commitManager.isCommitDue());
+		// the committed offset is the offset of the next record to consume
+		Assert.assertEquals(12, committed(consumer, TP0));
+		Assert.assertEquals(6, committed(consumer, TP1));
+	}
+
+	@Test
+	public void commitIsDueAfterCommitPeriod() throws Exception {
+		CommitManager commitManager = new CommitManager(0, 10);
+		commitManager.setAssignment(ASSIGNMENT);
+		Thread.sleep(20);
+		// no commit without submitted records
+		Assert.assertFalse(commitManager.isCommitDue());
+		commitManager.recordSubmitted("test", 0, 0);
+		Assert.assertTrue(commitManager.isCommitDue());
+	}
+
+	@Test
+	public void recordsOfOtherPartitionsAreIgnored() {
+		CommitManager commitManager = new CommitManager(1, Long.MAX_VALUE);
+		commitManager.setAssignment(Collections.singletonList(TP0));
+		commitManager.recordSubmitted("test", 1, 100);
+		commitManager.recordSubmitted("other", 0, 100);
+		Assert.assertTrue(commitManager.getSubmittedOffsets().isEmpty());
+		commitManager.recordSubmitted("test", 0, 7);
+		Assert.assertEquals(Collections.singletonMap(TP0, 8L), commitManager.getSubmittedOffsets());
+	}
+
+	@Test
+	public void assignmentChangeRetainsOffsets() {
+		CommitManager commitManager = new CommitManager(1, Long.MAX_VALUE);
+		commitManager.setAssignment(ASSIGNMENT);
+		commitManager.recordSubmitted("test", 0, 7);
+		commitManager.recordSubmitted("test", 1, 3);
+		commitManager.setAssignment(Collections.singletonList(TP0));
+		Assert.assertEquals(Collections.singletonMap(TP0, 8L), commitManager.getSubmittedOffsets());
+	}
+
+	@Test
+	public void unchangedOffsetsAreNotCommittedAgain() {
+		CommitManager commitManager = new CommitManager(1, Long.MAX_VALUE);
+		commitManager.setAssignment(ASSIGNMENT);
+		commitManager.recordSubmitted("test", 0, 7);
+		commitManager.commitSync(consumer);
+		Assert.assertEquals(8, committed(consumer, TP0));
+		// the next commit contains only TP1; a re-commit of TP0 would overwrite the manipulated value
+		consumer.commitSync(Collections.singletonMap(TP0, new OffsetAndMetadata(1)));
+		commitManager.recordSubmitted("test", 1, 3);
+		commitManager.commitSync(consumer);
+		Assert.assertEquals(1, committed(consumer, TP0));
+		Assert.assertEquals(4, committed(consumer, TP1));
+	}
+
+	@Test
+	public void resetOffsetsMovesCommittedOffsetsBack() {
+		CommitManager commitManager = new CommitManager(1, Long.MAX_VALUE);
+		commitManager.setAssignment(ASSIGNMENT);
+		commitManager.recordSubmitted("test", 0, 99);
+		commitManager.recordSubmitted("test", 1, 49);
+		commitManager.commitAsync(consumer);
+		Assert.assertEquals(100, committed(consumer, TP0));
+
+		// restore a checkpoint that was taken before the records were submitted
+		Map<TopicPartition, Long> restored = new HashMap<>();
+		restored.put(TP0, 60L);
+		commitManager.resetOffsets(ASSIGNMENT, restored);
+		Assert.assertEquals(restored, commitManager.getSubmittedOffsets());
+		commitManager.commitAsync(consumer);
+		Assert.assertEquals(60, committed(consumer, TP0));
+		// no restored offset for TP1: its committed offset is kept until records are submitted again
+		Assert.assertEquals(50, committed(consumer, TP1));
+
+		commitManager.recordSubmitted("test", 0, 60);
+		commitManager.recordSubmitted("test", 1, 20);
+		commitManager.commitAsync(consumer);
+		Assert.assertEquals(61, committed(consumer, TP0));
+		Assert.assertEquals(21, committed(consumer, TP1));
+	}
+}
@@ -0,0 +1,114 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Unit tests for the DeadLetterProducer, which forwards malformed records to the dead-letter topic.
+ */
+public class DeadLetterProducerTest {
+
+	private static final String DLT = "dead-letters";
+
+	private MockProducer<byte[], byte[]> producer;
+	private DeadLetterProducer deadLetterProducer;
+
+	@Before
+	public void setUp() {
+		producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+		deadLetterProducer = new DeadLetterProducer(producer, DLT);
+	}
+
+	private static String headerValue(ProducerRecord<?, ?> record, String key) {
+		Header header = record.headers().lastHeader(key);
+		Assert.assertNotNull("missing header " + key, header);
+		return new String(header.value(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void recordIsForwardedWithOrigin() {
+		RecordHeaders headers = new RecordHeaders();
+		headers.add(new RecordHeader("app", new byte[] {1, 2}));
+		ConsumerRecord<byte[], byte[]> record = new ConsumerRecord<>("orders", 3, 4711L, 1234567L, TimestampType.CREATE_TIME,
+				0L, 3, 4, new byte[] {'k', 'e', 'y'}, new byte[] {0, 1, 2, 3}, headers);
+		deadLetterProducer.send(record);
+
+		Assert.assertEquals(1, producer.history().size());
+		ProducerRecord<byte[], byte[]> forwarded = producer.history().get(0);
+		Assert.assertEquals(DLT, forwarded.topic());
+		Assert.assertArrayEquals(record.key(), forwarded.key());
+		Assert.assertArrayEquals(record.value(), forwarded.value());
+		Assert.assertEquals(Long.valueOf(1234567L), forwarded.timestamp());
+		Assert.assertArrayEquals(new byte[] {1, 2}, forwarded.headers().lastHeader("app").value());
+		Assert.assertEquals("orders", headerValue(forwarded, DeadLetterProducer.ORIGINAL_TOPIC_HEADER));
+		Assert.assertEquals("3", headerValue(forwarded, DeadLetterProducer.ORIGINAL_PARTITION_HEADER));
+		Assert.assertEquals("4711", headerValue(forwarded, DeadLetterProducer.ORIGINAL_OFFSET_HEADER));
+	}
+
+	@Test
+	public void recordWithoutTimestamp() {
+		deadLetterProducer.send(new ConsumerRecord<>("orders", 0, 1L, null, new byte[] {1}));
+		ProducerRecord<byte[], byte[]> forwarded = producer.history().get(0);
+		Assert.assertNull(forwarded.key());
+		Assert.assertNull(forwarded.timestamp());
+	}
+
+	@Test
+	public void malformedRecordIsRoutedToDeadLetterTopic() throws Exception {
+		// a record with a value that cannot be deserialized as Long is forwarded, the others are deserialized
+		ParallelDeserializer deserializer = new ParallelDeserializer(new Properties(), StringDeserializer.class,
+				ParallelDeserializerTest.SlowOffsetDeserializer.class, 2, Executors.defaultThreadFactory(), deadLetterProducer::send);
+		try {
+			ConsumerRecord<byte[], byte[]> good = new ConsumerRecord<>("orders", 0, 0L, null, ByteBuffer.allocate(Long.BYTES).putLong(10).array());
+			ConsumerRecord<byte[], byte[]> malformed = new ConsumerRecord<>("orders", 0, 1L, null, ByteBuffer.allocate(Long.BYTES).putLong(-1).array());
+			ConsumerRecords<?, ?> result = deserializer.deserialize(new ConsumerRecords<>(
+					Collections.singletonMap(new TopicPartition("orders", 0), Arrays.asList(good, malformed))));
+			Assert.assertEquals(1, result.count());
+			Assert.assertEquals(0L, result.iterator().next().offset());
+		} finally {
+			deserializer.shutdown();
+		}
+		Assert.assertEquals(1, producer.history().size());
+		ProducerRecord<byte[], byte[]> forwarded = producer.history().get(0);
+		Assert.assertEquals(DLT, forwarded.topic());
+		Assert.assertEquals("1", headerValue(forwarded, DeadLetterProducer.ORIGINAL_OFFSET_HEADER));
+	}
+
+	@Test
+	public void sendFailureIsNotPropagated() {
+		MockProducer<byte[], byte[]> failingProducer = new MockProducer<>(false, new ByteArraySerializer(), new ByteArraySerializer());
+		DeadLetterProducer deadLetterProducer = new DeadLetterProducer(failingProducer, DLT);
+		for (long offset = 0; offset < 3; ++offset) {
+			deadLetterProducer.send(new ConsumerRecord<>("orders", 0, offset, null, new byte[] {1}));
+		}
+		for (int i = 0; i < 3; ++i) {
+			Assert.assertTrue(failingProducer.errorNext(new RuntimeException("broker not available")));
+		}
+		Assert.assertEquals(3, failingProducer.history().size());
+	}
+
+	@Test
+	public void closeClosesProducer() {
+		deadLetterProducer.close();
+		Assert.assertTrue(producer.closed());
+	}
+}
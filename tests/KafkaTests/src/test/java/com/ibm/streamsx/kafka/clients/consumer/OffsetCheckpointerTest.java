@@ -0,0 +1,175 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.streams.operator.control.ControlPlaneContext;
+import com.ibm.streams.operator.control.variable.ControlVariableAccessor;
+import com.ibm.streamsx.kafka.clients.OffsetManager;
+
+/*
+ * Unit tests for the OffsetCheckpointer: full checkpoints, deltas relative to a base,
+ * and restore of every checkpoint with the base in memory and with the base read from the JCP.
+ */
+public class OffsetCheckpointerTest {
+
+	private static final String CV_PREFIX = "test.offsetManager";
+
+	/** the control variables of the simulated JCP by name; survives the OffsetCheckpointer instances like the JCP survives a PE */
+	private Map<String, String> jcp;
+
+	@Before
+	public void setUp() {
+		jcp = new HashMap<>();
+	}
+
+	@SuppressWarnings("unchecked")
+	private ControlVariableAccessor<String> createControlVariable(String name, String initialValue) {
+		jcp.putIfAbsent(name, initialValue);
+		return (ControlVariableAccessor<String>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ControlVariableAccessor.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "sync": return proxy;
+			case "getValue": return jcp.get(name);
+			case "setValue": jcp.put(name, (String) args[0]); return null;
+			default: throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private ControlPlaneContext createControlPlaneContext() {
+		return (ControlPlaneContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ControlPlaneContext.class}, (proxy, method, args) -> {
+			if (method.getName().equals("createStringControlVariable")) {
+				return createControlVariable((String) args[0], (String) args[2]);
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	private OffsetCheckpointer createCheckpointer(int fullCheckpointInterval) throws Exception {
+		return new OffsetCheckpointer(createControlPlaneContext(), CV_PREFIX, fullCheckpointInterval);
+	}
+
+	private static OffsetManager createOffsetManager() {
+		OffsetManager offsetManager = new OffsetManager(null);
+		offsetManager.addTopic("orders", Arrays.asList(new TopicPartition("orders", 0), new TopicPartition("orders", 1)));
+		offsetManager.setOffset("orders", 0, 100L);
+		offsetManager.setOffset("orders", 1, 200L);
+		return offsetManager;
+	}
+
+	/*
+	 * creates the checkpoints 1..n, changing one offset after every checkpoint; returns the checkpoint data and
+	 * adds the offsets at the time of each checkpoint to the expected states
+	 */
+	private static List<byte[]> createCheckpoints(OffsetCheckpointer checkpointer, OffsetManager offsetManager, int n, List<Map<TopicPartition, Long>> expected) throws Exception {
+		List<byte[]> checkpoints = new ArrayList<>();
+		for (int seq = 1; seq <= n; ++seq) {
+			checkpoints.add(checkpointer.checkpoint(offsetManager, seq));
+			expected.add(offsetManager.getOffsetMap());
+			offsetManager.setOffset("orders", seq % 2, 1000L * seq);
+		}
+		return checkpoints;
+	}
+
+	@Test
+	public void everyCheckpointIsFullWithIntervalOne() throws Exception {
+		OffsetCheckpointer checkpointer = createCheckpointer(1);
+		OffsetManager offsetManager = createOffsetManager();
+		List<Map<TopicPartition, Long>> expected = new ArrayList<>();
+		List<byte[]> checkpoints = createCheckpoints(checkpointer, offsetManager, 3, expected);
+		for (int i = 0; i < checkpoints.size(); ++i) {
+			Assert.assertArrayEquals(OffsetManager.fromByteArray(checkpoints.get(i)).toByteArray(), checkpoints.get(i));
+			Assert.assertEquals(expected.get(i), checkpointer.restore(checkpoints.get(i)).getOffsetMap());
+		}
+		Assert.assertTrue(jcp.isEmpty());
+	}
+
+	@Test
+	public void baseAndDeltas() throws Exception {
+		OffsetCheckpointer checkpointer = createCheckpointer(3);
+		List<Map<TopicPartition, Long>> expected = new ArrayList<>();
+		List<byte[]> checkpoints = createCheckpoints(checkpointer, createOffsetManager(), 7, expected);
+		final int[] frameTypes = {
+				OffsetCheckpointer.BASE_FRAME, OffsetCheckpointer.DELTA_FRAME, OffsetCheckpointer.DELTA_FRAME,
+				OffsetCheckpointer.BASE_FRAME, OffsetCheckpointer.DELTA_FRAME, OffsetCheckpointer.DELTA_FRAME,
+				OffsetCheckpointer.BASE_FRAME};
+		for (int i = 0; i < checkpoints.size(); ++i) {
+			Assert.assertEquals("checkpoint " + (i + 1), frameTypes[i], checkpoints.get(i)[0] & 0xFF);
+		}
+		// the bases alternate between the two control variables
+		Assert.assertEquals(0, checkpoints.get(0)[1]);
+		Assert.assertEquals(1, checkpoints.get(3)[1]);
+		Assert.assertEquals(0, checkpoints.get(6)[1]);
+	}
+
+	@Test
+	public void restoreEveryCheckpointWithBaseInMemory() throws Exception {
+		OffsetCheckpointer checkpointer = createCheckpointer(3);
+		List<Map<TopicPartition, Long>> expected = new ArrayList<>();
+		List<byte[]> checkpoints = createCheckpoints(checkpointer, createOffsetManager(), 6, expected);
+		// restore in reverse order, so that the base of the restored delta changes
+		for (int i = checkpoints.size() - 1; i >= 0; --i) {
+			Assert.assertEquals("checkpoint " + (i + 1), expected.get(i), checkpointer.restore(checkpoints.get(i)).getOffsetMap());
+		}
+	}
+
+	@Test
+	public void restoreDeltasAfterRestart() throws Exception {
+		List<Map<TopicPartition, Long>> expected = new ArrayList<>();
+		List<byte[]> checkpoints = createCheckpoints(createCheckpointer(3), createOffsetManager(), 6, expected);
+		// a new instance has no base in memory and reads it from the JCP
+		for (int i = 0; i < checkpoints.size(); ++i) {
+			Assert.assertEquals("checkpoint " + (i + 1), expected.get(i), createCheckpointer(3).restore(checkpoints.get(i)).getOffsetMap());
+		}
+	}
+
+	@Test
+	public void checkpointAfterRestoreOfDelta() throws Exception {
+		List<Map<TopicPartition, Long>> expected = new ArrayList<>();
+		List<byte[]> checkpoints = createCheckpoints(createCheckpointer(3), createOffsetManager(), 2, expected);
+		OffsetCheckpointer checkpointer = createCheckpointer(3);
+		OffsetManager restored = checkpointer.restore(checkpoints.get(1));
+		// the next checkpoint is a delta relative to the base read from the JCP
+		restored.setOffset("orders", 1, 555L);
+		byte[] data = checkpointer.checkpoint(restored, 3);
+		Assert.assertEquals(OffsetCheckpointer.DELTA_FRAME, data[0] & 0xFF);
+		Assert.assertEquals(restored.getOffsetMap(), createCheckpointer(3).restore(data).getOffsetMap());
+	}
+
+	@Test
+	public void checkpointAfterInvalidateBaseIsFull() throws Exception {
+		OffsetCheckpointer checkpointer = createCheckpointer(3);
+		OffsetManager offsetManager = createOffsetManager();
+		Assert.assertEquals(OffsetCheckpointer.BASE_FRAME, checkpointer.checkpoint(offsetManager, 1)[0] & 0xFF);
+		Assert.assertEquals(OffsetCheckpointer.DELTA_FRAME, checkpointer.checkpoint(offsetManager, 2)[0] & 0xFF);
+		checkpointer.invalidateBase();
+		Assert.assertEquals(OffsetCheckpointer.BASE_FRAME, checkpointer.checkpoint(offsetManager, 3)[0] & 0xFF);
+	}
+
+	@Test
+	public void fullStateIsRestoredWithDeltaInterval() throws Exception {
+		// checkpoints of a previous interval setting contain the full state without frame
+		OffsetManager offsetManager = createOffsetManager();
+		OffsetCheckpointer checkpointer = createCheckpointer(3);
+		Assert.assertEquals(offsetManager.getOffsetMap(), checkpointer.restore(offsetManager.toByteArray()).getOffsetMap());
+		// no base in memory, the next checkpoint is a base
+		Assert.assertEquals(OffsetCheckpointer.BASE_FRAME, checkpointer.checkpoint(offsetManager, 1)[0] & 0xFF);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void deltaWithOverwrittenBaseIsRejected() throws Exception {
+		List<Map<TopicPartition, Long>> expected = new ArrayList<>();
+		// checkpoint 7 overwrites the base of checkpoint 1 in slot 0
+		List<byte[]> checkpoints = createCheckpoints(createCheckpointer(3), createOffsetManager(), 7, expected);
+		createCheckpointer(3).restore(checkpoints.get(1));
+	}
+}
@@ -0,0 +1,160 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the ParallelDeserializer: the records of every partition keep their offset order,
+ * also when later chunks of a partition are deserialized before earlier ones.
+ */
+public class ParallelDeserializerTest {
+
+	private static final String TOPIC = "test";
+	private static final int N_PARTITIONS = 3;
+	private static final int N_RECORDS_PER_PARTITION = 500;
+
+	/*
+	 * Deserializes the offset written by {@link #createRecords()}. Values of the first records of a partition are
+	 * deserialized slowly, so that the first chunk completes after the later chunks. Negative values are malformed.
+	 */
+	public static class SlowOffsetDeserializer implements Deserializer<Long> {
+		@Override
+		public void configure(Map<String, ?> configs, boolean isKey) {
+		}
+
+		@Override
+		public Long deserialize(String topic, byte[] data) {
+			final long offset = ByteBuffer.wrap(data).getLong();
+			if (offset < 0) {
+				throw new IllegalArgumentException("malformed: " + offset);
+			}
+			if (offset < 10) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return offset;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private ParallelDeserializer deserializer;
+
+	@After
+	public void tearDown() {
+		if (deserializer != null) deserializer.shutdown();
+	}
+
+	private ParallelDeserializer createDeserializer(int nThreads, Consumer<ConsumerRecord<byte[], byte[]>> malformedRecordHandler) {
+		deserializer = new ParallelDeserializer(new Properties(), StringDeserializer.class, SlowOffsetDeserializer.class,
+				nThreads, Executors.defaultThreadFactory(), malformedRecordHandler);
+		return deserializer;
+	}
+
+	private static byte[] toBytes(long value) {
+		return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+	}
+
+	/*
+	 * creates raw records with the offset as value and the partition and offset as key
+	 */
+	private static ConsumerRecords<byte[], byte[]> createRecords() {
+		Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> records = new LinkedHashMap<>();
+		for (int partition = 0; partition < N_PARTITIONS; ++partition) {
+			List<ConsumerRecord<byte[], byte[]>> partitionRecords = new ArrayList<>();
+			for (long offset = 0; offset < N_RECORDS_PER_PARTITION; ++offset) {
+				partitionRecords.add(new ConsumerRecord<>(TOPIC, partition, offset, (partition + "-" + offset).getBytes(), toBytes(offset)));
+			}
+			records.put(new TopicPartition(TOPIC, partition), partitionRecords);
+		}
+		return new ConsumerRecords<>(records);
+	}
+
+	private static void assertOrderPreserved(ConsumerRecords<?, ?> records) {
+		Assert.assertEquals(N_PARTITIONS, records.partitions().size());
+		for (int partition = 0; partition < N_PARTITIONS; ++partition) {
+			List<? extends ConsumerRecord<?, ?>> partitionRecords = records.records(new TopicPartition(TOPIC, partition));
+			Assert.assertEquals(N_RECORDS_PER_PARTITION, partitionRecords.size());
+			long expectedOffset = 0;
+			for (ConsumerRecord<?, ?> record: partitionRecords) {
+				Assert.assertEquals(partition, record.partition());
+				Assert.assertEquals(expectedOffset, record.offset());
+				Assert.assertEquals(expectedOffset, record.value());
+				Assert.assertEquals(partition + "-" + expectedOffset, record.key());
+				++expectedOffset;
+			}
+		}
+	}
+
+	@Test
+	public void partitionOrderIsPreservedWithWorkerThreads() throws Exception {
+		// 1500 records on 4 threads give chunks of 375 records, so that the second chunk of a partition
+		// is deserialized concurrently with the slow first chunk
+		ParallelDeserializer deserializer = createDeserializer(4, null);
+		for (int i = 0; i < 3; ++i) {
+			assertOrderPreserved(deserializer.deserialize(createRecords()));
+		}
+	}
+
+	@Test
+	public void partitionOrderIsPreservedWithManySmallChunks() throws Exception {
+		ParallelDeserializer deserializer = createDeserializer(16, null);
+		assertOrderPreserved(deserializer.deserialize(createRecords()));
+	}
+
+	@Test
+	public void partitionOrderIsPreservedWithoutWorkerThreads() throws Exception {
+		ParallelDeserializer deserializer = createDeserializer(0, null);
+		assertOrderPreserved(deserializer.deserialize(createRecords()));
+	}
+
+	@Test
+	public void malformedRecordsAreRemoved() throws Exception {
+		final List<ConsumerRecord<byte[], byte[]>> malformed = Collections.synchronizedList(new ArrayList<>());
+		ParallelDeserializer deserializer = createDeserializer(2, malformed::add);
+		List<ConsumerRecord<byte[], byte[]>> partitionRecords = new ArrayList<>();
+		partitionRecords.add(new ConsumerRecord<>(TOPIC, 0, 0, null, toBytes(0)));
+		partitionRecords.add(new ConsumerRecord<>(TOPIC, 0, 1, null, toBytes(-1)));
+		partitionRecords.add(new ConsumerRecord<>(TOPIC, 0, 2, null, toBytes(2)));
+		Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> records = new LinkedHashMap<>();
+		records.put(new TopicPartition(TOPIC, 0), partitionRecords);
+		records.put(new TopicPartition(TOPIC, 1), Collections.singletonList(new ConsumerRecord<>(TOPIC, 1, 7, null, toBytes(-7))));
+
+		ConsumerRecords<?, ?> result = deserializer.deserialize(new ConsumerRecords<>(records));
+		Assert.assertEquals(2, result.count());
+		// the partition with only malformed records is left out
+		Assert.assertEquals(Collections.singleton(new TopicPartition(TOPIC, 0)), result.partitions());
+		List<? extends ConsumerRecord<?, ?>> partition0 = result.records(new TopicPartition(TOPIC, 0));
+		Assert.assertEquals(0L, partition0.get(0).offset());
+		Assert.assertEquals(2L, partition0.get(1).offset());
+		Assert.assertEquals(2, malformed.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void deserializerExceptionIsRethrownWithoutHandler() throws Exception {
+		ParallelDeserializer deserializer = createDeserializer(2, null);
+		deserializer.deserialize(new ConsumerRecords<>(Collections.singletonMap(new TopicPartition(TOPIC, 0),
+				Collections.singletonList(new ConsumerRecord<>(TOPIC, 0, 0, null, toBytes(-1))))));
+	}
+}
@@ -0,0 +1,89 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the PartitionShare, which distributes the partitions over the clients of an operator
+ * and over the clients of all channels when assigning by channel.
+ */
+public class PartitionShareTest {
+
+	private static final String[] TOPICS = {"orders", "events", "t"};
+	private static final int N_PARTITIONS = 24;
+
+	private static List<PartitionShare> createShares(int numClients, int maxChannels) {
+		List<PartitionShare> shares = new ArrayList<>();
+		for (int channel = 0; channel < maxChannels; ++channel) {
+			for (int clientIndex = 0; clientIndex < numClients; ++clientIndex) {
+				shares.add(PartitionShare.of(clientIndex, numClients, channel, maxChannels));
+			}
+		}
+		return shares;
+	}
+
+	private static void assertEveryPartitionHasOneShare(List<PartitionShare> shares) {
+		for (String topic: TOPICS) {
+			for (int partition = 0; partition < N_PARTITIONS; ++partition) {
+				TopicPartition tp = new TopicPartition(topic, partition);
+				int nOwners = 0;
+				for (PartitionShare share: shares) {
+					if (share.contains(tp)) ++nOwners;
+				}
+				Assert.assertEquals(tp.toString(), 1, nOwners);
+			}
+		}
+	}
+
+	@Test
+	public void shareIndexIsChannelTimesClients() {
+		PartitionShare share = PartitionShare.of(1, 3, 2, 4);
+		Assert.assertEquals(2 * 3 + 1, share.getIndex());
+		Assert.assertEquals(4 * 3, share.getCount());
+	}
+
+	@Test
+	public void channelsWithOneClient() {
+		// the default of one consumer thread per channel still distributes the partitions over the channels
+		PartitionShare share = PartitionShare.of(0, 1, 2, 3);
+		Assert.assertEquals(2, share.getIndex());
+		Assert.assertEquals(3, share.getCount());
+		assertEveryPartitionHasOneShare(createShares(1, 3));
+	}
+
+	@Test
+	public void channelsWithSeveralClients() {
+		List<PartitionShare> shares = createShares(3, 4);
+		assertEveryPartitionHasOneShare(shares);
+		// the partitions are distributed evenly
+		for (PartitionShare share: shares) {
+			int nOwned = 0;
+			for (int partition = 0; partition < N_PARTITIONS; ++partition) {
+				if (share.contains(new TopicPartition("orders", partition))) ++nOwned;
+			}
+			Assert.assertEquals(share.toString(), N_PARTITIONS / 12, nOwned);
+		}
+	}
+
+	@Test
+	public void clientsWithoutChannel() {
+		PartitionShare share = PartitionShare.of(1, 2, -1, 0);
+		Assert.assertEquals(1, share.getIndex());
+		Assert.assertEquals(2, share.getCount());
+		assertEveryPartitionHasOneShare(createShares(2, 1));
+		assertEveryPartitionHasOneShare(Arrays.asList(PartitionShare.of(0, 2, -1, 0), share));
+	}
+
+	@Test
+	public void singleShareContainsEveryPartition() {
+		PartitionShare share = PartitionShare.of(0, 1, -1, 0);
+		for (int partition = 0; partition < N_PARTITIONS; ++partition) {
+			Assert.assertTrue(share.contains(new TopicPartition("orders", partition)));
+		}
+	}
+}
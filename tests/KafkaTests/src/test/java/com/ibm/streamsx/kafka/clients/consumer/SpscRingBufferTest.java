@@ -0,0 +1,127 @@
+package com.ibm.streamsx.kafka.clients.consumer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the single-producer single-consumer ring buffer,
+ * which is the message queue between event thread and tuple submitter.
+ */
+public class SpscRingBufferTest {
+
+	@Test
+	public void capacityIsRoundedUpToPowerOfTwo() {
+		Assert.assertEquals(8, new SpscRingBuffer<Integer>(5, WaitStrategy.Park).remainingCapacity());
+		Assert.assertEquals(8, new SpscRingBuffer<Integer>(8, WaitStrategy.Park).remainingCapacity());
+		Assert.assertEquals(1, new SpscRingBuffer<Integer>(1, WaitStrategy.Park).remainingCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroCapacityIsRejected() {
+		new SpscRingBuffer<Integer>(0, WaitStrategy.Park);
+	}
+
+	@Test
+	public void emptyBuffer() throws Exception {
+		SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, WaitStrategy.Park);
+		Assert.assertTrue(buffer.isEmpty());
+		Assert.assertEquals(0, buffer.size());
+		Assert.assertNull(buffer.poll());
+		long start = System.nanoTime();
+		Assert.assertNull(buffer.poll(20, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
+	@Test
+	public void fullBufferRejectsOffer() {
+		SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, WaitStrategy.Park);
+		for (int i = 0; i < 4; ++i) {
+			Assert.assertTrue(buffer.offer(i));
+		}
+		Assert.assertEquals(0, buffer.remainingCapacity());
+		Assert.assertFalse(buffer.offer(4));
+		Assert.assertEquals(4, buffer.size());
+		// a rejected element must not overwrite the oldest one
+		Assert.assertEquals(Integer.valueOf(0), buffer.poll());
+		Assert.assertTrue(buffer.offer(4));
+		Assert.assertFalse(buffer.offer(5));
+		for (int i = 1; i <= 4; ++i) {
+			Assert.assertEquals(Integer.valueOf(i), buffer.poll());
+		}
+		Assert.assertNull(buffer.poll());
+	}
+
+	@Test
+	public void wrapAroundKeepsOrder() {
+		SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, WaitStrategy.Park);
+		int next = 0;
+		int expected = 0;
+		// head and tail pass the end of the array many times, with varying fill levels
+		for (int round = 0; round < 100; ++round) {
+			final int n = 1 + round % 4;
+			for (int i = 0; i < n; ++i) {
+				Assert.assertTrue(buffer.offer(next++));
+			}
+			for (int i = 0; i < n; ++i) {
+				Assert.assertEquals(Integer.valueOf(expected++), buffer.poll());
+			}
+			Assert.assertTrue(buffer.isEmpty());
+		}
+	}
+
+	@Test
+	public void replaceAllAfterWrapAround() {
+		SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, WaitStrategy.Park);
+		for (int i = 0; i < 3; ++i) {
+			buffer.offer(i);
+			buffer.poll();
+		}
+		for (int i = 0; i < 4; ++i) {
+			buffer.offer(i);
+		}
+		// remove the odd elements and negate the even ones
+		buffer.replaceAll(e -> e % 2 == 0? -e: null);
+		Assert.assertEquals(2, buffer.size());
+		Assert.assertEquals(Integer.valueOf(0), buffer.poll());
+		Assert.assertEquals(Integer.valueOf(-2), buffer.poll());
+		Assert.assertNull(buffer.poll());
+		Assert.assertEquals(4, buffer.remainingCapacity());
+	}
+
+	@Test
+	public void clearEmptiesBuffer() {
+		SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, WaitStrategy.Park);
+		for (int i = 0; i < 4; ++i) {
+			buffer.offer(i);
+		}
+		buffer.clear();
+		Assert.assertTrue(buffer.isEmpty());
+		Assert.assertNull(buffer.poll());
+		Assert.assertTrue(buffer.offer(42));
+		Assert.assertEquals(Integer.valueOf(42), buffer.poll());
+	}
+
+	@Test
+	public void transferBetweenThreads() throws Exception {
+		for (WaitStrategy waitStrategy: WaitStrategy.values()) {
+			final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(8, waitStrategy);
+			final int n = 100000;
+			Thread producer = new Thread(() -> {
+				for (int i = 0; i < n; ++i) {
+					while (!buffer.offer(i)) {
+						Thread.yield();
+					}
+				}
+			});
+			producer.start();
+			for (int i = 0; i < n; ++i) {
+				Integer e = buffer.poll(10, TimeUnit.SECONDS);
+				Assert.assertEquals(waitStrategy.toString(), Integer.valueOf(i), e);
+			}
+			producer.join();
+			Assert.assertTrue(buffer.isEmpty());
+		}
+	}
+}
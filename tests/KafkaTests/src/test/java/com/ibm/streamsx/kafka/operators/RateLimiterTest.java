@@ -0,0 +1,108 @@
+package com.ibm.streamsx.kafka.operators;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Unit tests for the token bucket rate limiter of the consumer operator.
+ */
+public class RateLimiterTest {
+
+	@Test
+	public void unlimitedNeverWaits() throws Exception {
+		RateLimiter limiter = new RateLimiter();
+		long start = System.nanoTime();
+		for (int i = 0; i < 100000; ++i) {
+			limiter.acquire(1000);
+			Assert.assertEquals(0, limiter.tryAcquire(1000));
+		}
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+	}
+
+	@Test
+	public void burstIsBoundedByOneSecond() throws Exception {
+		RateLimiter limiter = new RateLimiter();
+		limiter.setRates(50, 0);
+		// idle time must not accumulate more tokens than the rate of one second
+		Thread.sleep(200);
+		int nTaken = 0;
+		while (limiter.tryAcquire(0) == 0) {
+			++nTaken;
+			Assert.assertTrue("bucket not bounded", nTaken <= 60);
+		}
+		Assert.assertTrue("taken: " + nTaken, nTaken >= 50 && nTaken <= 51);
+		long wait = limiter.tryAcquire(0);
+		Assert.assertTrue("wait: " + wait, wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(20) + 1);
+	}
+
+	@Test
+	public void acquireKeepsRate() throws Exception {
+		RateLimiter limiter = new RateLimiter();
+		limiter.setRates(100, 0);
+		// drain the burst
+		for (int i = 0; i < 100; ++i) {
+			limiter.acquire(0);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < 20; ++i) {
+			limiter.acquire(0);
+		}
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		Assert.assertTrue("elapsed: " + elapsedMillis, elapsedMillis >= 180 && elapsedMillis < 1000);
+	}
+
+	@Test
+	public void takeReturnsDebtWithoutWaiting() throws Exception {
+		RateLimiter limiter = new RateLimiter();
+		limiter.setRates(10, 0);
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertEquals(0, limiter.take(0));
+		}
+		long start = System.nanoTime();
+		long wait = limiter.take(0);
+		long wait2 = limiter.take(0);
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+		// every record taken in debt adds to the wait time, like acquire
+		Assert.assertTrue("wait: " + wait, wait > TimeUnit.MILLISECONDS.toNanos(50) && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+		Assert.assertTrue("wait2: " + wait2, wait2 > wait + TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	public void byteRateLimitsLargeRecords() throws Exception {
+		RateLimiter limiter = new RateLimiter();
+		limiter.setRates(0, 1000);
+		// a record larger than the bucket passes when the bucket is full, and puts the bucket into debt
+		Assert.assertEquals(0, limiter.tryAcquire(3000));
+		long wait = limiter.tryAcquire(10);
+		Assert.assertTrue("wait: " + wait, wait > TimeUnit.MILLISECONDS.toNanos(1900) && wait <= TimeUnit.MILLISECONDS.toNanos(2020));
+	}
+
+	@Test
+	public void tryAcquireDoesNotTakeTokensWhenDenied() throws Exception {
+		RateLimiter limiter = new RateLimiter();
+		limiter.setRates(10, 0);
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertEquals(0, limiter.tryAcquire(0));
+		}
+		// repeated denials do not build up debt
+		long firstWait = limiter.tryAcquire(0);
+		for (int i = 0; i < 100; ++i) {
+			Assert.assertTrue(limiter.tryAcquire(0) <= firstWait);
+		}
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(firstWait) + 5);
+		Assert.assertEquals(0, limiter.tryAcquire(0));
+	}
+
+	@Test
+	public void ratesCanBeChanged() throws Exception {
+		RateLimiter limiter = new RateLimiter();
+		limiter.setRates(1, 0);
+		Assert.assertEquals(0, limiter.tryAcquire(0));
+		Assert.assertTrue(limiter.tryAcquire(0) > 0);
+		limiter.setRates(0, 0);
+		Assert.assertEquals(0, limiter.tryAcquire(0));
+		Assert.assertEquals(0.0, limiter.getRecordsPerSecond(), 0.0);
+	}
+}
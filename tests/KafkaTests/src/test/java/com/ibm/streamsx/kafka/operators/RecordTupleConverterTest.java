@@ -0,0 +1,168 @@
+package com.ibm.streamsx.kafka.operators;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.Blob;
+import com.ibm.streams.operator.types.RString;
+
+/*
+ * Unit tests for the conversion of consumer records into output tuples.
+ * Schema and tuple are mocked with dynamic proxies, so that no Streams runtime is needed.
+ */
+public class RecordTupleConverterTest {
+
+	/** a value of the Java type, which the deserializer of the toolkit returns, and the expected tuple setter per attribute type */
+	private static final Map<MetaType, Object> VALUES = new EnumMap<>(MetaType.class);
+	private static final Map<MetaType, String> SETTERS = new EnumMap<>(MetaType.class);
+	static {
+		VALUES.put(MetaType.RSTRING, new RString("message"));
+		SETTERS.put(MetaType.RSTRING, "setObject");
+		VALUES.put(MetaType.INT32, Integer.valueOf(-42));
+		SETTERS.put(MetaType.INT32, "setInt");
+		VALUES.put(MetaType.UINT32, Integer.valueOf(0xFFFFFFFE));
+		SETTERS.put(MetaType.UINT32, "setInt");
+		VALUES.put(MetaType.INT64, Long.valueOf(-42L));
+		SETTERS.put(MetaType.INT64, "setLong");
+		VALUES.put(MetaType.UINT64, Long.valueOf(0xFFFFFFFFFFFFFFFEL));
+		SETTERS.put(MetaType.UINT64, "setLong");
+		VALUES.put(MetaType.FLOAT32, Float.valueOf(1.5f));
+		SETTERS.put(MetaType.FLOAT32, "setFloat");
+		VALUES.put(MetaType.FLOAT64, Double.valueOf(2.5));
+		SETTERS.put(MetaType.FLOAT64, "setDouble");
+		VALUES.put(MetaType.BLOB, new byte[] {1, 2, 3});
+		SETTERS.put(MetaType.BLOB, "setBlob");
+	}
+
+	/** records the setter calls of an output tuple */
+	private static class TupleRecorder {
+		final Map<Integer, String> setters = new HashMap<>();
+		final Map<Integer, Object> values = new HashMap<>();
+		final OutputTuple tuple = (OutputTuple) Proxy.newProxyInstance(OutputTuple.class.getClassLoader(), new Class<?>[] {OutputTuple.class},
+				(proxy, method, args) -> {
+					if (!method.getName().startsWith("set") || !(args[0] instanceof Integer)) {
+						throw new UnsupportedOperationException(method.toString());
+					}
+					setters.put((Integer) args[0], method.getName());
+					values.put((Integer) args[0], args[1]);
+					return null;
+				});
+	}
+
+	private static Attribute attribute(String name, int index, MetaType metaType) {
+		final Type type = (Type) Proxy.newProxyInstance(Type.class.getClassLoader(), new Class<?>[] {Type.class}, (proxy, method, args) -> {
+			if (method.getName().equals("getMetaType")) return metaType;
+			throw new UnsupportedOperationException(method.toString());
+		});
+		return (Attribute) Proxy.newProxyInstance(Attribute.class.getClassLoader(), new Class<?>[] {Attribute.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getName": return name;
+			case "getIndex": return index;
+			case "getType": return type;
+			default: throw new UnsupportedOperationException(method.toString());
+			}
+		});
+	}
+
+	private static StreamSchema schema(Attribute... attributes) {
+		final Map<String, Attribute> byName = new HashMap<>();
+		for (Attribute a: attributes) {
+			byName.put(a.getName(), a);
+		}
+		return (StreamSchema) Proxy.newProxyInstance(StreamSchema.class.getClassLoader(), new Class<?>[] {StreamSchema.class}, (proxy, method, args) -> {
+			if (method.getName().equals("getAttribute") && args[0] instanceof String) return byName.get(args[0]);
+			throw new UnsupportedOperationException(method.toString());
+		});
+	}
+
+	private static void assertValue(MetaType metaType, Object expected, Object actual) {
+		if (expected instanceof byte[]) {
+			Assert.assertTrue(metaType.toString(), actual instanceof Blob);
+			Assert.assertArrayEquals(metaType.toString(), (byte[]) expected, ((Blob) actual).getData());
+		}
+		else {
+			Assert.assertEquals(metaType.toString(), expected, actual);
+		}
+	}
+
+	@Test
+	public void allSupportedTypesAreCovered() {
+		for (MetaType metaType: AbstractKafkaOperator.SUPPORTED_ATTR_TYPES) {
+			Assert.assertTrue("no test value for " + metaType, VALUES.containsKey(metaType));
+		}
+	}
+
+	@Test
+	public void messageAndKeyOfAllSupportedTypes() throws Exception {
+		List<String> failures = new ArrayList<>();
+		for (MetaType metaType: AbstractKafkaOperator.SUPPORTED_ATTR_TYPES) {
+			final StreamSchema schema = schema(attribute("message", 0, metaType), attribute("key", 1, metaType));
+			final RecordTupleConverter converter = new RecordTupleConverter(schema, "message", "key", "topic", "offset", "partition", "messageTimestamp");
+			final Object value = VALUES.get(metaType);
+			final TupleRecorder recorder = new TupleRecorder();
+			try {
+				converter.populate(new ConsumerRecord<Object, Object>("test", 0, 0, value, value), recorder.tuple);
+			} catch (Exception e) {
+				failures.add(metaType + ": " + e);
+				continue;
+			}
+			Assert.assertEquals(metaType.toString(), SETTERS.get(metaType), recorder.setters.get(0));
+			Assert.assertEquals(metaType.toString(), SETTERS.get(metaType), recorder.setters.get(1));
+			assertValue(metaType, value, recorder.values.get(0));
+			assertValue(metaType, value, recorder.values.get(1));
+		}
+		Assert.assertTrue(failures.toString(), failures.isEmpty());
+	}
+
+	@Test
+	public void rstringAcceptsString() throws Exception {
+		// custom deserializers may return String for rstring attributes
+		final RecordTupleConverter converter = new RecordTupleConverter(schema(attribute("message", 0, MetaType.RSTRING)),
+				"message", "key", "topic", "offset", "partition", "messageTimestamp");
+		final TupleRecorder recorder = new TupleRecorder();
+		converter.populate(new ConsumerRecord<Object, Object>("test", 0, 0, null, "text"), recorder.tuple);
+		Assert.assertEquals("setString", recorder.setters.get(0));
+		Assert.assertEquals("text", recorder.values.get(0));
+	}
+
+	@Test
+	public void nullKeyAndValueAreNotSet() throws Exception {
+		final RecordTupleConverter converter = new RecordTupleConverter(
+				schema(attribute("message", 0, MetaType.INT32), attribute("key", 1, MetaType.INT64)),
+				"message", "key", "topic", "offset", "partition", "messageTimestamp");
+		final TupleRecorder recorder = new TupleRecorder();
+		converter.populate(new ConsumerRecord<Object, Object>("test", 0, 0, null, null), recorder.tuple);
+		Assert.assertTrue(recorder.setters.isEmpty());
+	}
+
+	@Test
+	public void metadataAttributes() throws Exception {
+		final RecordTupleConverter converter = new RecordTupleConverter(schema(attribute("message", 0, MetaType.INT32),
+				attribute("topic", 1, MetaType.RSTRING), attribute("offset", 2, MetaType.INT64),
+				attribute("partition", 3, MetaType.INT32), attribute("messageTimestamp", 4, MetaType.INT64)),
+				"message", "key", "topic", "offset", "partition", "messageTimestamp");
+		final TupleRecorder recorder = new TupleRecorder();
+		converter.populate(new ConsumerRecord<Object, Object>("test", 7, 123L, null, 1), recorder.tuple);
+		Assert.assertEquals(new RString("test"), recorder.values.get(1));
+		Assert.assertEquals(123L, recorder.values.get(2));
+		Assert.assertEquals(7, recorder.values.get(3));
+		Assert.assertEquals(ConsumerRecord.NO_TIMESTAMP, recorder.values.get(4));
+		// the topic RString is cached
+		final TupleRecorder recorder2 = new TupleRecorder();
+		converter.populate(new ConsumerRecord<Object, Object>("test", 7, 124L, null, 1), recorder2.tuple);
+		Assert.assertSame(recorder.values.get(1), recorder2.values.get(1));
+	}
+}
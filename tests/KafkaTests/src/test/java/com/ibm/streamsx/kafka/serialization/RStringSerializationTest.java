@@ -0,0 +1,64 @@
+package com.ibm.streamsx.kafka.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.streams.operator.types.RString;
+
+/*
+ * Unit tests for the rstring serializer and deserializer and their encoding configuration.
+ */
+public class RStringSerializationTest {
+
+	private static final String TEXT = "Gr\u00FC\u00DFe \u20AC";
+
+	@Test
+	public void utf8ByDefault() {
+		RStringSerializer serializer = new RStringSerializer();
+		serializer.configure(Collections.emptyMap(), false);
+		Assert.assertArrayEquals(TEXT.getBytes(StandardCharsets.UTF_8), serializer.serialize("t", new RString(TEXT)));
+		Assert.assertArrayEquals(TEXT.getBytes(StandardCharsets.UTF_8), serializer.serialize("t", TEXT));
+		Assert.assertNull(serializer.serialize("t", null));
+
+		RStringDeserializer deserializer = new RStringDeserializer();
+		deserializer.configure(Collections.emptyMap(), false);
+		Assert.assertEquals(new RString(TEXT), deserializer.deserialize("t", TEXT.getBytes(StandardCharsets.UTF_8)));
+		Assert.assertNull(deserializer.deserialize("t", null));
+	}
+
+	@Test
+	public void serializerEncoding() {
+		Map<String, Object> configs = new HashMap<>();
+		configs.put("value.serializer.encoding", "UTF-16BE");
+		configs.put("serializer.encoding", "ISO-8859-15");
+		RStringSerializer valueSerializer = new RStringSerializer();
+		valueSerializer.configure(configs, false);
+		Assert.assertArrayEquals(TEXT.getBytes(StandardCharsets.UTF_16BE), valueSerializer.serialize("t", new RString(TEXT)));
+		Assert.assertArrayEquals(TEXT.getBytes(StandardCharsets.UTF_16BE), valueSerializer.serialize("t", TEXT));
+
+		// the key serializer falls back to 'serializer.encoding'
+		RStringSerializer keySerializer = new RStringSerializer();
+		keySerializer.configure(configs, true);
+		Assert.assertArrayEquals(new byte[] {'G', 'r', (byte) 0xFC, (byte) 0xDF, 'e', ' ', (byte) 0xA4}, keySerializer.serialize("t", new RString(TEXT)));
+	}
+
+	@Test
+	public void roundTripWithEncoding() {
+		Map<String, Object> configs = new HashMap<>();
+		configs.put("serializer.encoding", "UTF-16LE");
+		configs.put("deserializer.encoding", "UTF-16LE");
+		RStringSerializer serializer = new RStringSerializer();
+		serializer.configure(configs, false);
+		RStringDeserializer deserializer = new RStringDeserializer();
+		deserializer.configure(configs, false);
+		RString restored = deserializer.deserialize("t", serializer.serialize("t", new RString(TEXT)));
+		Assert.assertEquals(new RString(TEXT), restored);
+		// the RString holds UTF-8
+		Assert.assertArrayEquals(TEXT.getBytes(StandardCharsets.UTF_8), restored.getData());
+	}
+}
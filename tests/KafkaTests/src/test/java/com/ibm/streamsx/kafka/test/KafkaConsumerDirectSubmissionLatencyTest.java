@@ -0,0 +1,137 @@
+package com.ibm.streamsx.kafka.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.streams.flow.handlers.StreamCollector;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.kafka.test.utils.Constants;
+import com.ibm.streamsx.kafka.test.utils.KafkaSPLStreamsUtils;
+import com.ibm.streamsx.topology.TStream;
+import com.ibm.streamsx.topology.Topology;
+import com.ibm.streamsx.topology.context.StreamsContext;
+import com.ibm.streamsx.topology.context.StreamsContext.Type;
+import com.ibm.streamsx.topology.context.StreamsContextFactory;
+import com.ibm.streamsx.topology.function.Supplier;
+import com.ibm.streamsx.topology.spl.SPL;
+import com.ibm.streamsx.topology.spl.SPLStream;
+import com.ibm.streamsx.topology.spl.SPLStreams;
+import com.ibm.streamsx.topology.tester.Condition;
+import com.ibm.streamsx.topology.tester.Tester;
+
+/*
+ * Compares the end-to-end latency of the KafkaConsumer with directSubmission
+ * against the default mode, in which the records are handed over to the
+ * tuple submitter thread through the message queue.
+ *
+ * The latency of a message is the time from the creation timestamp set by
+ * the producer until the tuple is processed downstream of the consumer.
+ * Producer and consumer run in the same standalone process, so that both
+ * timestamps are taken from the same clock. The messages are produced one
+ * by one with a fixed period, so that the latency is not dominated by the
+ * time to drain large batches. The percentiles of both modes are printed.
+ *
+ * This test requires the following:
+ *  - topic "test" be created on the Kafka server
+ *  - appConfig "kafka-test" be created on the domain
+ */
+public class KafkaConsumerDirectSubmissionLatencyTest extends AbstractKafkaTest {
+
+	private static final String TEST_NAME = "KafkaConsumerDirectSubmissionLatencyTest";
+	private static final StreamSchema TIMESTAMP_SCHEMA = com.ibm.streams.operator.Type.Factory.getStreamSchema("tuple<rstring key, rstring message, int64 messageTimestamp>");
+	private static final int N_MESSAGES = 500;
+	private static final long PRODUCER_PERIOD_MS = 20;
+
+	/*
+	 * Produces N_MESSAGES messages after the consumer has had the time to subscribe.
+	 * Returns null when no message is to be produced.
+	 */
+	private static class PacedMessages implements Supplier<String> {
+		private static final long serialVersionUID = 1L;
+		private final long nSkipped = Constants.PRODUCER_DELAY / PRODUCER_PERIOD_MS;
+		private long nCalls = 0;
+
+		@Override
+		public String get() {
+			final long n = nCalls++ - nSkipped;
+			return n >= 0 && n < N_MESSAGES? "message_" + n: null;
+		}
+	}
+
+	public KafkaConsumerDirectSubmissionLatencyTest() throws Exception {
+		super(TEST_NAME);
+	}
+
+	@Test
+	public void kafkaDirectSubmissionLatency() throws Exception {
+		List<Long> queued = measureLatencies(false);
+		List<Long> direct = measureLatencies(true);
+		System.out.println(TEST_NAME + " latency [ms]: " + format("queued", queued) + "; " + format("direct", direct));
+	}
+
+	/*
+	 * runs producer and consumer and returns the sorted latencies of the consumed messages in milliseconds
+	 */
+	private List<Long> measureLatencies(boolean directSubmission) throws Exception {
+		Topology topo = createTopology(TEST_NAME + (directSubmission? "Direct": "Queued"));
+
+		// create the producer
+		TStream<String> stringSrcStream = topo.periodicSource(new PacedMessages(), PRODUCER_PERIOD_MS, TimeUnit.MILLISECONDS);
+		SPL.invokeSink(Constants.KafkaProducerOp,
+				KafkaSPLStreamsUtils.convertStreamToKafkaTuple(stringSrcStream),
+				getKafkaParams());
+
+		// create the consumer
+		Map<String, Object> consumerParams = getKafkaParams();
+		consumerParams.put("directSubmission", directSubmission);
+		SPLStream consumerStream = SPL.invokeSource(topo, Constants.KafkaConsumerOp, consumerParams, TIMESTAMP_SCHEMA);
+		SPLStream latencyStream = SPLStreams.stringToSPLStream(consumerStream.convert(
+				t -> String.valueOf(System.currentTimeMillis() - t.getLong("messageTimestamp"))));
+
+		// collect the latencies
+		StreamsContext<?> context = StreamsContextFactory.getStreamsContext(Type.STANDALONE_TESTER);
+		Tester tester = topo.getTester();
+		final StreamCollector<LinkedList<Tuple>, Tuple> tuples = StreamCollector.newLinkedListCollector();
+		tester.splHandler(latencyStream, tuples);
+		Condition<Long> condition = tester.tupleCount(latencyStream, N_MESSAGES);
+		tester.complete(context, new HashMap<>(), condition, 60, TimeUnit.SECONDS);
+
+		// check the results
+		Assert.assertTrue(condition.toString(), condition.valid());
+		List<Long> latencies = new ArrayList<>(N_MESSAGES);
+		synchronized (tuples.getTuples()) {
+			for (Tuple tuple : tuples.getTuples()) {
+				latencies.add(Long.valueOf(tuple.getString(0)));
+			}
+		}
+		Collections.sort(latencies);
+		return latencies;
+	}
+
+	private static long percentile(List<Long> sortedValues, double p) {
+		return sortedValues.get((int) Math.min(sortedValues.size() - 1, Math.floor(p * sortedValues.size())));
+	}
+
+	private static String format(String mode, List<Long> sortedLatencies) {
+		return mode + " p50=" + percentile(sortedLatencies, 0.5) + " p90=" + percentile(sortedLatencies, 0.9)
+				+ " p99=" + percentile(sortedLatencies, 0.99) + " max=" + sortedLatencies.get(sortedLatencies.size() - 1);
+	}
+
+	private Map<String, Object> getKafkaParams() {
+		Map<String, Object> params = new HashMap<String, Object>();
+
+		params.put("topic", Constants.TOPIC_TEST);
+		params.put("appConfigName", Constants.APP_CONFIG);
+
+		return params;
+	}
+}